@@ -0,0 +1,25 @@
+package com.community.communitybackend.common.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis 配置
+ * 注册 Redis 发布/订阅的监听容器，各业务在启动时向其中添加自己的频道监听
+ * 监听回调在订阅线程上按到达顺序同步执行（默认每条消息新开一个线程，顺序无法保证），
+ * 回调里只能做轻量处理，耗时的工作交给自己的线程池
+ */
+@Configuration
+public class RedisConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(new SyncTaskExecutor());
+        return container;
+    }
+}
@@ -0,0 +1,13 @@
+package com.community.communitybackend.common.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 定时任务配置
+ * 开启 @Scheduled 注解支持（热榜重建、计数器批量落库等后台任务）
+ */
+@Configuration
+@EnableScheduling
+public class ScheduleConfig {
+}
@@ -39,10 +39,15 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/**").permitAll()
                         // 放行帖子列表、详情和评论（公开访问）
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/post/list").permitAll()
+                        .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/post/list/cursor").permitAll()
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/post/{id}").permitAll()
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/post/{id}/comments").permitAll()
+                        .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/post/{id}/comments/page").permitAll()
+                        .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/post/comments/{commentId}/replies").permitAll()
                         // 放行社团列表（公开访问）
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/club/**").permitAll()
+                        // WebSocket 握手由 ChatHandshakeInterceptor 校验 Token（浏览器无法设置 Authorization 头）
+                        .requestMatchers("/ws/**").permitAll()
                         // 放行错误页面
                         .requestMatchers("/error").permitAll()
                         // 其他请求需要认证
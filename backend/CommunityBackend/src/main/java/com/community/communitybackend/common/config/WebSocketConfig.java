@@ -0,0 +1,50 @@
+package com.community.communitybackend.common.config;
+
+import com.community.communitybackend.websocket.ChatHandshakeInterceptor;
+import com.community.communitybackend.websocket.ChatWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+/**
+ * WebSocket 配置
+ * 注册聊天端点 /ws/chat，握手时由 ChatHandshakeInterceptor 校验 Token
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    /**
+     * 单条消息最大长度
+     */
+    private static final int MAX_MESSAGE_SIZE = 64 * 1024;
+
+    /**
+     * 空闲超时：客户端每 3 分钟发一次心跳，5 分钟没有任何数据就断开
+     */
+    private static final long IDLE_TIMEOUT_MS = 5 * 60 * 1000L;
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final ChatHandshakeInterceptor chatHandshakeInterceptor;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .addInterceptors(chatHandshakeInterceptor)
+                // 与 CorsConfig 一致
+                .setAllowedOriginPatterns("*");
+    }
+
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(MAX_MESSAGE_SIZE);
+        container.setMaxSessionIdleTimeout(IDLE_TIMEOUT_MS);
+        return container;
+    }
+}
@@ -0,0 +1,76 @@
+package com.community.communitybackend.common.utils;
+
+/**
+ * HTML 转纯文本工具类
+ * 单次顺序扫描去掉标签并把连续空白合并为一个空格，不使用正则、不产生中间字符串；
+ * 生成摘要时读够长度就提前结束，不必扫描整篇正文
+ */
+public class HtmlTextUtils {
+
+    /**
+     * 摘要最大字符数（超出部分用 ... 代替）
+     */
+    public static final int SUMMARY_LENGTH = 200;
+
+    private HtmlTextUtils() {
+    }
+
+    /**
+     * 生成帖子摘要：纯文本前200字符，超出时追加 ...
+     */
+    public static String summarize(String html) {
+        if (html == null) return "";
+        String text = extract(html, SUMMARY_LENGTH + 1);
+        return text.length() > SUMMARY_LENGTH ? text.substring(0, SUMMARY_LENGTH) + "..." : text;
+    }
+
+    /**
+     * 转为完整纯文本（用于搜索）
+     */
+    public static String toPlainText(String html) {
+        if (html == null) return "";
+        return extract(html, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 去除HTML标签、合并空白并去掉首尾空白，最多输出 limit 个字符
+     * 标签规则与 "<[^>]+>" 一致：'<' 后至少一个字符再跟 '>' 才算标签，否则按普通字符保留
+     */
+    private static String extract(String html, int limit) {
+        int length = html.length();
+        // 最后一个 '>' 之后的 '<' 不可能构成标签，提前算好避免每次向后查找
+        int lastGt = html.lastIndexOf('>');
+        StringBuilder sb = new StringBuilder(Math.min(length, limit));
+        boolean pendingSpace = false;
+
+        int i = 0;
+        while (i < length && sb.length() < limit) {
+            char c = html.charAt(i);
+            if (c == '<' && i + 1 < length && html.charAt(i + 1) != '>' && lastGt > i + 1) {
+                // 跳过整个标签
+                i = html.indexOf('>', i + 1) + 1;
+                continue;
+            }
+            if (isWhitespace(c)) {
+                // 开头的空白直接丢弃，中间的连续空白只保留一个
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                    if (sb.length() >= limit) break;
+                }
+                sb.append(c);
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 与正则 \s 相同的空白字符集
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,43 @@
+package com.community.communitybackend.common.utils;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Redis 互斥锁工具类（多个节点的定时写回任务只允许一个同时执行）
+ * 加锁时写入随机令牌，释放时比较令牌再删除：任务执行超过过期时间、锁已被其他节点拿到时，不会把别人的锁删掉
+ */
+public class RedisLockUtils {
+
+    /**
+     * 令牌一致才删除
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0",
+            Long.class);
+
+    private RedisLockUtils() {
+    }
+
+    /**
+     * 尝试加锁
+     * @return 加锁成功返回令牌（释放时传入），锁被占用返回 null
+     */
+    public static String tryLock(StringRedisTemplate redisTemplate, String key, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(key, token, ttl);
+        return Boolean.TRUE.equals(locked) ? token : null;
+    }
+
+    /**
+     * 释放自己持有的锁，锁已过期或已被其他节点持有时不处理
+     */
+    public static void unlock(StringRedisTemplate redisTemplate, String key, String token) {
+        redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+    }
+}
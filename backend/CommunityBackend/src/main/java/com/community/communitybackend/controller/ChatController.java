@@ -3,13 +3,16 @@ package com.community.communitybackend.controller;
 import com.community.communitybackend.common.exception.BusinessException;
 import com.community.communitybackend.common.utils.Result;
 import com.community.communitybackend.service.ChatService;
+import com.community.communitybackend.service.PresenceService;
 import com.community.communitybackend.vo.ChatMessageVO;
 import com.community.communitybackend.vo.ChatRoomVO;
+import com.community.communitybackend.vo.CursorPageVO;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -21,7 +24,13 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ChatController {
 
+    /**
+     * 单次批量查询在线状态的最大用户数
+     */
+    private static final int MAX_ONLINE_QUERY = 200;
+
     private final ChatService chatService;
+    private final PresenceService presenceService;
 
     /**
      * 获取用户的频道列表
@@ -46,16 +55,19 @@ public class ChatController {
     }
 
     /**
-     * 获取聊天室消息
-     * GET /api/chat/room/{roomId}/messages
+     * 获取聊天室消息（消息ID游标分页）
+     * GET /api/chat/room/{roomId}/messages?size=50                最新一页
+     * GET /api/chat/room/{roomId}/messages?before=123&size=50     向上翻历史
+     * GET /api/chat/room/{roomId}/messages?after=456&size=50      补拉 456 之后的新消息
      */
     @GetMapping("/room/{roomId}/messages")
-    public Result<List<ChatMessageVO>> getMessages(
+    public Result<CursorPageVO<ChatMessageVO>> getMessages(
             @PathVariable Long roomId,
-            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
             @RequestParam(defaultValue = "50") int size) {
         Long userId = getCurrentUserId();
-        List<ChatMessageVO> messages = chatService.getChatMessages(roomId, userId, page, size);
+        CursorPageVO<ChatMessageVO> messages = chatService.getChatMessages(roomId, userId, before, after, size);
         return Result.success(messages);
     }
 
@@ -76,6 +88,31 @@ public class ChatController {
         return Result.success(message);
     }
 
+    /**
+     * 标记已读（未读数清零）
+     * POST /api/chat/room/{roomId}/read?messageId=123，不传 messageId 表示读到最新一条
+     */
+    @PostMapping("/room/{roomId}/read")
+    public Result<Void> markRead(
+            @PathVariable Long roomId,
+            @RequestParam(required = false) Long messageId) {
+        chatService.markRead(getCurrentUserId(), roomId, messageId);
+        return Result.success(null);
+    }
+
+    /**
+     * 批量查询在线状态（成员列表、私信标题栏），一次最多 200 个用户
+     * GET /api/chat/online?userIds=1,2,3  返回其中在线的用户ID
+     */
+    @GetMapping("/online")
+    public Result<List<Long>> getOnlineUsers(@RequestParam List<Long> userIds) {
+        getCurrentUserId();
+        if (userIds.size() > MAX_ONLINE_QUERY) {
+            throw new BusinessException(400, "一次最多查询" + MAX_ONLINE_QUERY + "个用户");
+        }
+        return Result.success(new ArrayList<>(presenceService.getOnlineUserIds(userIds)));
+    }
+
     private Long getCurrentUserId() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !(authentication.getPrincipal() instanceof Long)) {
@@ -5,16 +5,25 @@ import com.community.communitybackend.common.exception.BusinessException;
 import com.community.communitybackend.common.utils.Result;
 import com.community.communitybackend.dto.CommentDTO;
 import com.community.communitybackend.dto.PostDTO;
+import com.community.communitybackend.service.CommentLikeService;
 import com.community.communitybackend.service.CommentService;
+import com.community.communitybackend.service.PostLikeService;
 import com.community.communitybackend.service.PostService;
+import com.community.communitybackend.vo.CommentLikeVO;
 import com.community.communitybackend.vo.CommentVO;
+import com.community.communitybackend.vo.CursorPageVO;
+import com.community.communitybackend.vo.PostLikeVO;
+import com.community.communitybackend.vo.PostListItemVO;
 import com.community.communitybackend.vo.PostVO;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 
 /**
@@ -27,13 +36,15 @@ public class PostController {
 
     private final PostService postService;
     private final CommentService commentService;
+    private final PostLikeService postLikeService;
+    private final CommentLikeService commentLikeService;
 
     /**
      * 获取帖子列表
      * GET /api/post/list?tab=latest&clubId=1&page=1&size=20
      */
     @GetMapping("/list")
-    public Result<Page<PostVO>> getPostList(
+    public Result<Page<PostListItemVO>> getPostList(
             @RequestParam(defaultValue = "latest") String tab,
             @RequestParam(required = false) Long clubId,
             @RequestParam(defaultValue = "1") int page,
@@ -44,7 +55,28 @@ public class PostController {
             userId = getCurrentUserId();
         }
 
-        Page<PostVO> postPage = postService.getPostList(tab, clubId, userId, page, size);
+        Page<PostListItemVO> postPage = postService.getPostList(tab, clubId, userId, getCurrentUserIdOrNull(), page, size);
+        return Result.success(postPage);
+    }
+
+    /**
+     * 获取帖子列表（游标分页）
+     * GET /api/post/list/cursor?tab=latest&clubId=1&cursor=xxx&size=20
+     */
+    @GetMapping("/list/cursor")
+    public Result<CursorPageVO<PostListItemVO>> getPostListByCursor(
+            @RequestParam(defaultValue = "latest") String tab,
+            @RequestParam(required = false) Long clubId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        Long userId = null;
+        if ("my".equals(tab)) {
+            userId = getCurrentUserId();
+        }
+
+        CursorPageVO<PostListItemVO> postPage =
+                postService.getPostListByCursor(tab, clubId, userId, getCurrentUserIdOrNull(), cursor, size);
         return Result.success(postPage);
     }
 
@@ -53,11 +85,12 @@ public class PostController {
      * GET /api/post/{id}
      */
     @GetMapping("/{id}")
-    public Result<PostVO> getPostDetail(@PathVariable Long id) {
-        // 增加浏览量
-        postService.incrementViewCount(id);
+    public Result<PostVO> getPostDetail(@PathVariable Long id, HttpServletRequest request) {
+        // 帖子不存在时 getPostDetail 直接抛出 404，不为不存在的帖子记录浏览（避免凭空创建 UV 计数）
+        PostVO post = postService.getPostDetail(id, getCurrentUserIdOrNull());
 
-        PostVO post = postService.getPostDetail(id);
+        // 增加浏览量
+        postService.incrementViewCount(id, resolveViewerKey(request));
         return Result.success(post);
     }
 
@@ -94,6 +127,26 @@ public class PostController {
         return Result.success(null);
     }
 
+    /**
+     * 点赞帖子
+     * POST /api/post/{id}/like
+     */
+    @PostMapping("/{id}/like")
+    public Result<PostLikeVO> likePost(@PathVariable Long id) {
+        Long userId = getCurrentUserId();
+        return Result.success(postLikeService.like(userId, id));
+    }
+
+    /**
+     * 取消点赞
+     * DELETE /api/post/{id}/like
+     */
+    @DeleteMapping("/{id}/like")
+    public Result<PostLikeVO> unlikePost(@PathVariable Long id) {
+        Long userId = getCurrentUserId();
+        return Result.success(postLikeService.unlike(userId, id));
+    }
+
     /**
      * 获取帖子评论列表
      * GET /api/post/{id}/comments
@@ -105,6 +158,36 @@ public class PostController {
         return Result.success(comments);
     }
 
+    /**
+     * 分页获取帖子评论（游标分页，每条顶级评论内联最早的几条回复）
+     * GET /api/post/{id}/comments/page?sort=time&cursor=xxx&size=20
+     * sort: time（按发表时间，默认）/ top（按点赞数）
+     */
+    @GetMapping("/{id}/comments/page")
+    public Result<CursorPageVO<CommentVO>> getCommentPage(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "time") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserIdOrNull();
+        CursorPageVO<CommentVO> comments = commentService.getCommentPage(id, sort, cursor, size, userId);
+        return Result.success(comments);
+    }
+
+    /**
+     * 分页获取评论的回复
+     * GET /api/post/comments/{commentId}/replies?cursor=xxx&size=20
+     */
+    @GetMapping("/comments/{commentId}/replies")
+    public Result<CursorPageVO<CommentVO>> getReplyPage(
+            @PathVariable Long commentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserIdOrNull();
+        CursorPageVO<CommentVO> replies = commentService.getReplyPage(commentId, cursor, size, userId);
+        return Result.success(replies);
+    }
+
     /**
      * 发表评论
      * POST /api/post/{id}/comments
@@ -138,6 +221,42 @@ public class PostController {
         return Result.success(null);
     }
 
+    /**
+     * 点赞评论
+     * POST /api/post/comments/{commentId}/like
+     */
+    @PostMapping("/comments/{commentId}/like")
+    public Result<CommentLikeVO> likeComment(@PathVariable Long commentId) {
+        Long userId = getCurrentUserId();
+        return Result.success(commentLikeService.like(userId, commentId));
+    }
+
+    /**
+     * 取消点赞评论
+     * DELETE /api/post/comments/{commentId}/like
+     */
+    @DeleteMapping("/comments/{commentId}/like")
+    public Result<CommentLikeVO> unlikeComment(@PathVariable Long commentId) {
+        Long userId = getCurrentUserId();
+        return Result.success(commentLikeService.unlike(userId, commentId));
+    }
+
+    /**
+     * 访问者标识：登录用户用 userId，游客用 IP + User-Agent 的摘要作为客户端指纹
+     */
+    private String resolveViewerKey(HttpServletRequest request) {
+        Long userId = getCurrentUserIdOrNull();
+        if (userId != null) {
+            return "u:" + userId;
+        }
+        // 不直接读 X-Forwarded-For（客户端可以随意伪造）：server.forward-headers-strategy=native 时
+        // Tomcat 只信任来自内网代理的转发头，从右往左去掉代理后的第一个地址就是 getRemoteAddr()
+        String ip = request.getRemoteAddr();
+        String userAgent = request.getHeader("User-Agent");
+        String fingerprint = ip + "|" + (userAgent != null ? userAgent : "");
+        return "c:" + DigestUtils.md5DigestAsHex(fingerprint.getBytes(StandardCharsets.UTF_8));
+    }
+
     private Long getCurrentUserIdOrNull() {
         try {
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -20,6 +20,17 @@ public class ChatRoom {
 
     private String avatar;
 
+    /**
+     * 最后一条消息快照（发送消息时更新，会话列表直接读取）
+     */
+    private Long lastMessageId;
+
+    private String lastMessagePreview;
+
+    private Long lastSenderId;
+
+    private LocalDateTime lastMessageAt;
+
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
@@ -18,5 +18,10 @@ public class ChatRoomMember {
 
     private String role;
 
+    /**
+     * 已读到的消息ID（0 表示还没有读过）
+     */
+    private Long lastReadMessageId;
+
     private LocalDateTime joinedAt;
 }
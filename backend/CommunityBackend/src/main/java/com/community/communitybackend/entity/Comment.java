@@ -18,6 +18,11 @@ public class Comment {
 
     private Long parentId;
 
+    /**
+     * 所属顶级评论ID（顶级评论为0），楼中楼回复也直接指向顶级评论，用于分页加载某条评论下的全部回复
+     */
+    private Long rootId;
+
     private String content;
 
     private Integer likeCount;
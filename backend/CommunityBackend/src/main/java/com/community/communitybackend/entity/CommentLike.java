@@ -0,0 +1,20 @@
+package com.community.communitybackend.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("comment_like")
+public class CommentLike {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    private Long commentId;
+
+    private Long userId;
+
+    private LocalDateTime createdAt;
+}
@@ -18,6 +18,16 @@ public class Post {
 
     private String content;
 
+    /**
+     * 摘要（纯文本前200字符，发帖/编辑时生成）
+     */
+    private String summary;
+
+    /**
+     * 正文纯文本（去掉HTML标签，用于搜索）
+     */
+    private String plainText;
+
     private String images;
 
     private Long clubId;
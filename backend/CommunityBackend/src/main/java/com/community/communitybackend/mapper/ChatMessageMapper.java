@@ -2,8 +2,30 @@ package com.community.communitybackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.community.communitybackend.entity.ChatMessage;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
+
+    /**
+     * 一次取 count 个消息ID（批量写入前先分配ID，不依赖 INSERT ... RETURNING 的返回顺序）
+     */
+    @Select("SELECT nextval('chat_message_id_seq') FROM generate_series(1, #{count})")
+    List<Long> selectNextIds(@Param("count") int count);
+
+    /**
+     * 多行 INSERT 批量写入消息（ID 已分配）
+     */
+    @Insert("<script>" +
+            "INSERT INTO chat_message (id, room_id, sender_id, content, msg_type, status, created_at) VALUES " +
+            "<foreach collection='messages' item='m' separator=','>" +
+            "(#{m.id}, #{m.roomId}, #{m.senderId}, #{m.content}, #{m.msgType}, #{m.status}, #{m.createdAt})" +
+            "</foreach>" +
+            "</script>")
+    int batchInsert(@Param("messages") List<ChatMessage> messages);
 }
@@ -2,8 +2,47 @@ package com.community.communitybackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.community.communitybackend.entity.ChatRoom;
+import com.community.communitybackend.vo.ChatRoomVO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 @Mapper
 public interface ChatRoomMapper extends BaseMapper<ChatRoom> {
+
+    /**
+     * 用户的会话列表（一条 SQL）：最后一条消息直接取 chat_room 上的快照，按最后活跃时间倒序
+     * 私信的名称和头像取对方用户的（peer_user_id 为对方ID），频道取聊天室自己的
+     */
+    @Select("SELECT r.id, r.room_type," +
+            "  CASE WHEN r.room_type = 'direct' THEN COALESCE(u.nickname, u.username, r.room_name) ELSE r.room_name END AS name," +
+            "  CASE WHEN r.room_type = 'direct' THEN u.avatar ELSE r.avatar END AS avatar, o.user_id AS peer_user_id," +
+            "  r.last_message_id, r.last_message_preview AS last_message, r.last_message_at AS last_message_time," +
+            "  r.last_sender_id, COALESCE(s.nickname, s.username) AS last_sender_name " +
+            "FROM chat_room_member m " +
+            "JOIN chat_room r ON r.id = m.room_id " +
+            "LEFT JOIN chat_room_member o ON r.room_type = 'direct' AND o.room_id = r.id AND o.user_id <> #{userId} " +
+            "LEFT JOIN users u ON u.user_id = o.user_id " +
+            "LEFT JOIN users s ON s.user_id = r.last_sender_id " +
+            "WHERE m.user_id = #{userId} AND r.room_type = #{roomType} " +
+            "ORDER BY COALESCE(r.last_message_at, r.created_at) DESC, r.id DESC")
+    List<ChatRoomVO> selectConversations(@Param("userId") Long userId, @Param("roomType") String roomType);
+
+    /**
+     * 批量更新多个聊天室的最后一条消息快照（每个聊天室一行），并发写入时只保留ID更大的那条
+     */
+    @Update("<script>" +
+            "UPDATE chat_room AS r SET last_message_id = v.message_id, last_message_preview = v.preview," +
+            " last_sender_id = v.sender_id, last_message_at = v.sent_at, updated_at = v.sent_at FROM (VALUES " +
+            "<foreach collection='rooms' item='room' separator=','>" +
+            "(CAST(#{room.id} AS BIGINT), CAST(#{room.lastMessageId} AS BIGINT), CAST(#{room.lastMessagePreview} AS VARCHAR)," +
+            " CAST(#{room.lastSenderId} AS BIGINT), CAST(#{room.lastMessageAt} AS TIMESTAMP))" +
+            "</foreach>" +
+            ") AS v(id, message_id, preview, sender_id, sent_at) " +
+            "WHERE r.id = v.id AND (r.last_message_id IS NULL OR r.last_message_id &lt; v.message_id)" +
+            "</script>")
+    int batchUpdateLastMessage(@Param("rooms") List<ChatRoom> rooms);
 }
@@ -3,7 +3,41 @@ package com.community.communitybackend.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.community.communitybackend.entity.ChatRoomMember;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ChatRoomMemberMapper extends BaseMapper<ChatRoomMember> {
+
+    /**
+     * 推进已读位置（只前进不后退，多端乱序上报已读时不会回退）
+     */
+    @Update("UPDATE chat_room_member SET last_read_message_id = GREATEST(COALESCE(last_read_message_id, 0), #{messageId}) " +
+            "WHERE room_id = #{roomId} AND user_id = #{userId}")
+    int advanceLastRead(@Param("roomId") Long roomId, @Param("userId") Long userId, @Param("messageId") Long messageId);
+
+    /**
+     * 用户每个聊天室的未读数（已读位置之后、别人发的消息），列：room_id, unread
+     * 只在 Redis 未读计数未加载时调用；按已读消息的 (created_at, id) 走 (room_id, created_at, id) 索引范围扫描
+     */
+    @Select("SELECT rm.room_id," +
+            "  (SELECT COUNT(*) FROM chat_message c" +
+            "   WHERE c.room_id = rm.room_id AND c.sender_id <> rm.user_id" +
+            "     AND (c.created_at, c.id) > (COALESCE(lr.created_at, CAST('-infinity' AS TIMESTAMP)), COALESCE(rm.last_read_message_id, 0))) AS unread " +
+            "FROM chat_room_member rm " +
+            "LEFT JOIN chat_message lr ON lr.id = rm.last_read_message_id " +
+            "WHERE rm.user_id = #{userId}")
+    List<Map<String, Object>> selectUnreadCounts(@Param("userId") Long userId);
+
+    /**
+     * 单个聊天室中某条消息之后、别人发的消息数
+     */
+    @Select("SELECT COUNT(*) FROM chat_message c, chat_message lr " +
+            "WHERE lr.id = #{messageId} AND c.room_id = #{roomId} AND c.sender_id <> #{userId}" +
+            " AND (c.created_at, c.id) > (lr.created_at, lr.id)")
+    long countUnreadAfter(@Param("roomId") Long roomId, @Param("userId") Long userId, @Param("messageId") Long messageId);
 }
@@ -0,0 +1,45 @@
+package com.community.communitybackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.community.communitybackend.entity.CommentLike;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface CommentLikeMapper extends BaseMapper<CommentLike> {
+
+    /**
+     * 批量插入评论点赞记录，已存在的忽略（后台任务重试时保证幂等）
+     */
+    @Insert("<script>" +
+            "INSERT INTO comment_like (comment_id, user_id, created_at) VALUES " +
+            "<foreach collection='likes' item='like' separator=','>" +
+            "(#{like.commentId}, #{like.userId}, #{like.createdAt})" +
+            "</foreach>" +
+            " ON CONFLICT (comment_id, user_id) DO NOTHING" +
+            "</script>")
+    int batchInsertIgnore(@Param("likes") List<CommentLike> likes);
+
+    /**
+     * 批量删除评论点赞记录
+     */
+    @Delete("<script>" +
+            "DELETE FROM comment_like WHERE (comment_id, user_id) IN (" +
+            "<foreach collection='likes' item='like' separator=','>" +
+            "(#{like.commentId}, #{like.userId})" +
+            "</foreach>" +
+            ")" +
+            "</script>")
+    int batchDelete(@Param("likes") List<CommentLike> likes);
+
+    /**
+     * 查询评论的所有点赞用户（加载 Redis 点赞集合时使用）
+     */
+    @Select("SELECT user_id FROM comment_like WHERE comment_id = #{commentId}")
+    List<Long> selectUserIdsByCommentId(@Param("commentId") Long commentId);
+}
@@ -3,7 +3,53 @@ package com.community.communitybackend.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.community.communitybackend.entity.Comment;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface CommentMapper extends BaseMapper<Comment> {
+
+    /**
+     * 批量查询多个帖子各自最近的 limit 条评论（只取 post_id、user_id、created_at）
+     * 用窗口函数一次查完，代替每个帖子一条 LIMIT 查询
+     */
+    @Select("<script>" +
+            "SELECT post_id, user_id, created_at FROM (" +
+            "  SELECT post_id, user_id, created_at," +
+            "         ROW_NUMBER() OVER (PARTITION BY post_id ORDER BY created_at DESC, id DESC) AS rn" +
+            "  FROM comment WHERE post_id IN " +
+            "  <foreach collection='postIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            ") t WHERE rn &lt;= #{limit} ORDER BY post_id, rn" +
+            "</script>")
+    List<Comment> selectRecentByPostIds(@Param("postIds") Collection<Long> postIds, @Param("limit") int limit);
+
+    /**
+     * 批量查询多条顶级评论各自最早的 limit 条回复（评论分页时内联展示）
+     */
+    @Select("<script>" +
+            "SELECT id, post_id, user_id, parent_id, root_id, content, like_count, status, created_at FROM (" +
+            "  SELECT c.*, ROW_NUMBER() OVER (PARTITION BY root_id ORDER BY created_at, id) AS rn" +
+            "  FROM comment c WHERE status = 1 AND root_id IN " +
+            "  <foreach collection='rootIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            ") t WHERE rn &lt;= #{limit} ORDER BY root_id, rn" +
+            "</script>")
+    List<Comment> selectFirstRepliesByRootIds(@Param("rootIds") Collection<Long> rootIds, @Param("limit") int limit);
+
+    /**
+     * 批量覆盖评论点赞数（以 Redis 点赞集合的大小为准）
+     * @param counts 评论ID -> 点赞数
+     */
+    @Update("<script>" +
+            "UPDATE comment AS c SET like_count = v.cnt FROM (VALUES " +
+            "<foreach collection='counts' index='commentId' item='cnt' separator=','>" +
+            "(CAST(#{commentId} AS BIGINT), CAST(#{cnt} AS INT))" +
+            "</foreach>" +
+            ") AS v(id, cnt) WHERE c.id = v.id" +
+            "</script>")
+    int batchSetLikeCount(@Param("counts") Map<Long, Long> counts);
 }
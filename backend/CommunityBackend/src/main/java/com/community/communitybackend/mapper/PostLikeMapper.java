@@ -2,8 +2,44 @@ package com.community.communitybackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.community.communitybackend.entity.PostLike;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface PostLikeMapper extends BaseMapper<PostLike> {
+
+    /**
+     * 批量插入点赞记录，已存在的忽略（后台任务重试时保证幂等）
+     */
+    @Insert("<script>" +
+            "INSERT INTO post_like (post_id, user_id, created_at) VALUES " +
+            "<foreach collection='likes' item='like' separator=','>" +
+            "(#{like.postId}, #{like.userId}, #{like.createdAt})" +
+            "</foreach>" +
+            " ON CONFLICT (post_id, user_id) DO NOTHING" +
+            "</script>")
+    int batchInsertIgnore(@Param("likes") List<PostLike> likes);
+
+    /**
+     * 批量删除点赞记录
+     */
+    @Delete("<script>" +
+            "DELETE FROM post_like WHERE (post_id, user_id) IN (" +
+            "<foreach collection='likes' item='like' separator=','>" +
+            "(#{like.postId}, #{like.userId})" +
+            "</foreach>" +
+            ")" +
+            "</script>")
+    int batchDelete(@Param("likes") List<PostLike> likes);
+
+    /**
+     * 查询帖子的所有点赞用户（加载 Redis 点赞集合时使用）
+     */
+    @Select("SELECT user_id FROM post_like WHERE post_id = #{postId}")
+    List<Long> selectUserIdsByPostId(@Param("postId") Long postId);
 }
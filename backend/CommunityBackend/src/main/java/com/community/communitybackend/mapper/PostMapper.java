@@ -2,10 +2,17 @@ package com.community.communitybackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.community.communitybackend.entity.Post;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface PostMapper extends BaseMapper<Post> {
 
@@ -23,4 +30,75 @@ public interface PostMapper extends BaseMapper<Post> {
 
     @Update("UPDATE post SET view_count = view_count + 1 WHERE id = #{postId}")
     int incrementViewCount(@Param("postId") Long postId);
+
+    /**
+     * 批量增加浏览量：一条 UPDATE ... FROM (VALUES ...) 更新多个帖子
+     * @param deltas 帖子ID -> 增量
+     * @return 更新后的浏览量（只有 id、viewCount）
+     */
+    @Select("<script>" +
+            "UPDATE post AS p SET view_count = p.view_count + v.delta FROM (VALUES " +
+            "<foreach collection='deltas' index='postId' item='delta' separator=','>" +
+            "(CAST(#{postId} AS BIGINT), CAST(#{delta} AS INT))" +
+            "</foreach>" +
+            ") AS v(id, delta) WHERE p.id = v.id RETURNING p.id, p.view_count" +
+            "</script>")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<Post> batchIncrementViewCount(@Param("deltas") Map<Long, Long> deltas);
+
+    /**
+     * 批量累加评论数（不会减到 0 以下）
+     * @param deltas 帖子ID -> 增量，可为负数
+     * @return 更新后的评论数（只有 id、commentCount）
+     */
+    @Select("<script>" +
+            "UPDATE post AS p SET comment_count = GREATEST(p.comment_count + v.delta, 0) FROM (VALUES " +
+            "<foreach collection='deltas' index='postId' item='delta' separator=','>" +
+            "(CAST(#{postId} AS BIGINT), CAST(#{delta} AS INT))" +
+            "</foreach>" +
+            ") AS v(id, delta) WHERE p.id = v.id RETURNING p.id, p.comment_count" +
+            "</script>")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<Post> batchIncrementCommentCount(@Param("deltas") Map<Long, Long> deltas);
+
+    /**
+     * 记录评论数写回批次，与 batchIncrementCommentCount 在同一事务中执行
+     */
+    @Insert("INSERT INTO post_comment_count_batch (token) VALUES (#{token})")
+    int insertCommentCountBatch(@Param("token") String token);
+
+    /**
+     * 批次是否已经写入
+     */
+    @Select("SELECT EXISTS (SELECT 1 FROM post_comment_count_batch WHERE token = #{token})")
+    boolean existsCommentCountBatch(@Param("token") String token);
+
+    @Delete("DELETE FROM post_comment_count_batch WHERE token = #{token}")
+    int deleteCommentCountBatch(@Param("token") String token);
+
+    /**
+     * 批量覆盖点赞数（以 Redis 点赞集合的大小为准）
+     * @param counts 帖子ID -> 点赞数
+     */
+    @Update("<script>" +
+            "UPDATE post AS p SET like_count = v.cnt FROM (VALUES " +
+            "<foreach collection='counts' index='postId' item='cnt' separator=','>" +
+            "(CAST(#{postId} AS BIGINT), CAST(#{cnt} AS INT))" +
+            "</foreach>" +
+            ") AS v(id, cnt) WHERE p.id = v.id" +
+            "</script>")
+    int batchSetLikeCount(@Param("counts") Map<Long, Long> counts);
+
+    /**
+     * 批量写入摘要和纯文本（回填历史数据用）
+     * @param posts 只需 id、summary、plainText
+     */
+    @Update("<script>" +
+            "UPDATE post AS p SET summary = v.summary, plain_text = v.plain_text FROM (VALUES " +
+            "<foreach collection='posts' item='post' separator=','>" +
+            "(CAST(#{post.id} AS BIGINT), CAST(#{post.summary} AS VARCHAR), CAST(#{post.plainText} AS TEXT))" +
+            "</foreach>" +
+            ") AS v(id, summary, plain_text) WHERE p.id = v.id" +
+            "</script>")
+    int batchUpdateSummary(@Param("posts") List<Post> posts);
 }
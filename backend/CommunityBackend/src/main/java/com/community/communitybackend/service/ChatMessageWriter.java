@@ -0,0 +1,19 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.entity.ChatMessage;
+
+/**
+ * 聊天消息写入
+ *
+ * 两种模式（chat.message.write-mode）：
+ *   direct - 每条消息单独一个事务：分配ID、INSERT、更新聊天室快照
+ *   group  - 组提交：各聊天室的消息在一个很短的窗口内攒成一批，一个事务里多行 INSERT，
+ *            每个聊天室的快照只更新一次，提交后才返回给各个发送者
+ */
+public interface ChatMessageWriter {
+
+    /**
+     * 写入一条消息，返回时消息已经提交（id、createdAt 已填好）
+     */
+    ChatMessage write(ChatMessage message);
+}
@@ -2,6 +2,7 @@ package com.community.communitybackend.service;
 
 import com.community.communitybackend.vo.ChatRoomVO;
 import com.community.communitybackend.vo.ChatMessageVO;
+import com.community.communitybackend.vo.CursorPageVO;
 
 import java.util.List;
 
@@ -18,12 +19,33 @@ public interface ChatService {
     List<ChatRoomVO> getUserDirectMessages(Long userId);
 
     /**
-     * 获取聊天室消息列表
+     * 按消息ID游标获取聊天室消息
+     * 不传游标：最新的 size 条，按时间倒序；
+     * before：早于该消息的 size 条（向上翻历史），按时间倒序；
+     * after：晚于该消息的 size 条（断线重连后补拉），按时间正序。
+     * nextCursor 为本页最后一条的消息ID，继续翻页时原样作为 before / after 传入。
      */
-    List<ChatMessageVO> getChatMessages(Long roomId, Long userId, int page, int size);
+    CursorPageVO<ChatMessageVO> getChatMessages(Long roomId, Long userId, Long before, Long after, int size);
 
     /**
-     * 发送消息
+     * 发送消息，提交后推送给聊天室的在线成员（REST 和 WebSocket 发送都会推送）
      */
     ChatMessageVO sendMessage(Long userId, Long roomId, String content);
+
+    /**
+     * 标记已读，清零该聊天室的未读数，并向聊天室成员推送已读回执
+     * @param messageId 已读到的消息ID，为空表示读到最新一条
+     * @return 实际记录的已读消息ID，聊天室还没有消息时为 null
+     */
+    Long markRead(Long userId, Long roomId, Long messageId);
+
+    /**
+     * 是否为聊天室成员
+     */
+    boolean isRoomMember(Long roomId, Long userId);
+
+    /**
+     * 获取用户所在的全部聊天室ID（建立 WebSocket 连接时用于登记会话）
+     */
+    List<Long> getUserRoomIds(Long userId);
 }
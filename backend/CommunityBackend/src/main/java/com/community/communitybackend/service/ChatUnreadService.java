@@ -0,0 +1,34 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.entity.ChatMessage;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 聊天未读数服务
+ *
+ * 每个成员的已读位置存在 chat_room_member.last_read_message_id，
+ * 未读数存在 Redis Hash chat:unread:{userId}（字段 roomId），发送消息时给其他成员 +1，已读时清零，
+ * 会话列表一次 HMGET 取出全部聊天室的未读数，不按聊天室 COUNT。
+ */
+public interface ChatUnreadService {
+
+    /**
+     * 新消息：给聊天室除发送者外的成员未读数加上各自收到的条数（在事务中调用时等提交后才生效）
+     * 一批消息涉及的聊天室成员一次查出，每个成员的未读 Hash 只更新一次
+     */
+    void recordMessages(Collection<ChatMessage> messages);
+
+    /**
+     * 标记已读
+     * @param messageId 已读到的消息ID，为空表示读到最新一条
+     * @return 实际记录的已读消息ID，聊天室还没有消息时为 null
+     */
+    Long markRead(Long userId, Long roomId, Long messageId);
+
+    /**
+     * 批量获取用户在这些聊天室的未读数（一次 Redis 往返），没有未读的聊天室为 0
+     */
+    Map<Long, Integer> getUnreadCounts(Long userId, Collection<Long> roomIds);
+}
@@ -0,0 +1,35 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.vo.CommentVO;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 帖子评论缓存服务
+ * 按帖子缓存已组装好的评论节点（作者、回复目标都已填好），评论增删改时增量更新而不是整体失效；
+ * 缓存中不包含 isLiked 等与当前访问者相关的字段
+ */
+public interface CommentCacheService {
+
+    /**
+     * 读取帖子的全部评论节点（未挂接回复，顺序不保证）
+     * 缓存未命中时调用 loader 从数据库组装并回填
+     */
+    List<CommentVO> getCommentNodes(Long postId, Function<Long, List<CommentVO>> loader);
+
+    /**
+     * 新评论追加到缓存（缓存未加载时不处理）
+     */
+    void appendComment(CommentVO comment);
+
+    /**
+     * 用编辑后的评论替换缓存中的旧节点
+     */
+    void updateComment(CommentVO comment);
+
+    /**
+     * 从缓存中移除已删除的评论
+     */
+    void removeComment(Long postId, Long commentId);
+}
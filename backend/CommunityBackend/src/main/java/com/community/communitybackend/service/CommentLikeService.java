@@ -0,0 +1,35 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.vo.CommentLikeVO;
+import com.community.communitybackend.vo.CommentVO;
+
+import java.util.Collection;
+
+/**
+ * 评论点赞服务
+ * 点赞关系以 Redis Set（comment:like:{commentId}）为准，请求中只改 Redis；
+ * comment_like 表和 comment.like_count 由后台任务批量同步
+ */
+public interface CommentLikeService {
+
+    /**
+     * 点赞（重复点赞不报错）
+     */
+    CommentLikeVO like(Long userId, Long commentId);
+
+    /**
+     * 取消点赞（未点赞时不报错）
+     */
+    CommentLikeVO unlike(Long userId, Long commentId);
+
+    /**
+     * 给一批评论填上实时点赞数和当前用户是否点赞（一次 Redis 往返，点赞集合未加载的评论再查一次数据库）
+     * 点赞集合未加载的评论保留原有的点赞数；currentUserId 为空（未登录）时 isLiked 全部为 false
+     */
+    void fillLikeState(Collection<CommentVO> comments, Long currentUserId);
+
+    /**
+     * 把累积的点赞变化批量写回数据库，并同步评论排行
+     */
+    void flush();
+}
@@ -0,0 +1,36 @@
+package com.community.communitybackend.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 评论热度排行服务
+ * 每个帖子在 Redis 有序集合中维护顶级评论的点赞数排行，「最热评论」分页直接按名次读取，不在请求时排序整个评论区
+ */
+public interface CommentRankService {
+
+    /**
+     * 按点赞数从高到低读取顶级评论（点赞数相同时新评论在前），用于游标分页
+     * 排行尚未加载时先从数据库加载
+     * @param lastLikeCount 上一页最后一条的点赞数，为空表示第一页
+     * @param lastCommentId 上一页最后一条的评论ID
+     * @return 评论ID -> 点赞数，按名次排列
+     */
+    LinkedHashMap<Long, Long> getTopCommentIdsAfter(Long postId, Long lastLikeCount, Long lastCommentId, int count);
+
+    /**
+     * 新的顶级评论加入排行（事务提交后执行）
+     */
+    void add(Long postId, Long commentId);
+
+    /**
+     * 已删除的顶级评论移出排行（事务提交后执行）
+     */
+    void remove(Long postId, Long commentId);
+
+    /**
+     * 点赞数写回后同步更新排行中的分数，只更新已在排行中的评论
+     * @param likeCounts 帖子ID -> (评论ID -> 点赞数)
+     */
+    void updateScores(Map<Long, Map<Long, Long>> likeCounts);
+}
@@ -2,6 +2,7 @@ package com.community.communitybackend.service;
 
 import com.community.communitybackend.dto.CommentDTO;
 import com.community.communitybackend.vo.CommentVO;
+import com.community.communitybackend.vo.CursorPageVO;
 
 import java.util.List;
 
@@ -12,6 +13,19 @@ public interface CommentService {
      */
     List<CommentVO> getCommentsByPostId(Long postId, Long currentUserId);
 
+    /**
+     * 分页获取帖子的顶级评论（游标分页），每条顶级评论内联最早的几条回复
+     * @param sort time 按发表时间（默认），top 按点赞数从高到低
+     * @param cursor 上一页返回的 nextCursor，第一页传空
+     */
+    CursorPageVO<CommentVO> getCommentPage(Long postId, String sort, String cursor, int size, Long currentUserId);
+
+    /**
+     * 分页获取某条顶级评论下的回复（游标分页）
+     * @param cursor 上一页返回的 nextCursor（或评论上的 repliesCursor）
+     */
+    CursorPageVO<CommentVO> getReplyPage(Long commentId, String cursor, int size, Long currentUserId);
+
     /**
      * 创建评论
      */
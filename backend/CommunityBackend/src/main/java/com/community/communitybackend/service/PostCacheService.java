@@ -0,0 +1,50 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.vo.PostVO;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 帖子详情缓存服务
+ * 本地 Caffeine（L1）+ Redis（L2）两级缓存组装好的 PostVO，不包含与当前访问者相关的字段
+ *
+ * 浏览量、点赞数、评论数变化频繁，写回数据库后不让详情缓存失效，而是把最新值记到 post:counts:{postId}，
+ * 读取详情时覆盖缓存中的计数
+ */
+public interface PostCacheService {
+
+    String COUNT_VIEW = "view";
+    String COUNT_LIKE = "like";
+    String COUNT_COMMENT = "comment";
+
+    /**
+     * 读取帖子详情，两级缓存都未命中时调用 loader 从数据库组装并回填
+     * 返回的对象是缓存中的共享实例，调用方修改前需要先复制
+     * loader 抛出的 404 BusinessException 会被短暂缓存，期间直接抛出 404
+     */
+    PostVO getPostDetail(Long postId, Function<Long, PostVO> loader);
+
+    /**
+     * 使帖子详情缓存失效（同时通知其他节点清除本地缓存）
+     */
+    void evictPostDetail(Long postId);
+
+    /**
+     * 批量使帖子详情缓存失效
+     */
+    void evictPostDetails(Collection<Long> postIds);
+
+    /**
+     * 记录计数写回数据库后的最新值（一次 Redis 往返）
+     * @param field COUNT_VIEW / COUNT_LIKE / COUNT_COMMENT
+     * @param counts 帖子ID -> 数据库中的最新值
+     */
+    void putCounts(String field, Map<Long, Long> counts);
+
+    /**
+     * 读取帖子最近写回的计数，没有记录的字段不在结果中
+     */
+    Map<String, Long> getCounts(Long postId);
+}
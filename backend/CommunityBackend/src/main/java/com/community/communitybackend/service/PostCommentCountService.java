@@ -0,0 +1,30 @@
+package com.community.communitybackend.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 帖子评论数计数服务
+ *
+ * 两种模式（post.comment-count.mode）：
+ *   direct   - 在发表/删除评论的事务里直接 UPDATE post.comment_count
+ *   deferred - 事务提交后把增量记到 Redis，由后台任务定期批量写回，热门帖子的评论不再排队等 post 行锁
+ */
+public interface PostCommentCountService {
+
+    /**
+     * 记录评论数变化（在事务中调用时，deferred 模式下等提交后才生效）
+     * @param delta 发表评论 +1，删除评论 -1
+     */
+    void recordChange(Long postId, int delta);
+
+    /**
+     * 批量获取尚未写回数据库的评论数增量（一次 Redis 往返），没有增量的帖子不在结果中
+     */
+    Map<Long, Long> getPendingDeltas(Collection<Long> postIds);
+
+    /**
+     * 把累积的评论数增量批量写回数据库
+     */
+    void flush();
+}
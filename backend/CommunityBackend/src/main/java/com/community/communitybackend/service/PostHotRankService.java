@@ -0,0 +1,54 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.entity.Post;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 帖子热榜服务
+ * 在 Redis 有序集合中维护帖子热度（全站一个、每个社团一个），点赞/评论/浏览变化时增量更新
+ */
+public interface PostHotRankService {
+
+    /**
+     * 按帖子当前的计数重新计算热度并写入热榜（已删除的帖子会被移出）
+     */
+    void refresh(Post post);
+
+    /**
+     * 批量刷新热度（会从数据库读取这些帖子的最新计数）
+     */
+    void refresh(Collection<Long> postIds);
+
+    /**
+     * 从热榜中移除帖子
+     * @param clubId 帖子所属社团，可为空
+     */
+    void remove(Long postId, Long clubId);
+
+    /**
+     * 按名次分页读取热榜中的帖子ID（热度从高到低）
+     * @param clubId 社团ID，为空表示全站
+     */
+    List<Long> getHotPostIds(Long clubId, long offset, int count);
+
+    /**
+     * 读取热度低于（或等于且排在其后）给定位置的帖子，用于游标分页
+     * @param maxScore 上一页最后一条的热度，为空表示第一页
+     * @param lastPostId 上一页最后一条的帖子ID
+     * @return 帖子ID -> 热度，按热度从高到低
+     */
+    LinkedHashMap<Long, Double> getHotPostIdsAfter(Long clubId, Double maxScore, Long lastPostId, int count);
+
+    /**
+     * 热榜中的帖子总数
+     */
+    long count(Long clubId);
+
+    /**
+     * 从数据库全量重建热榜
+     */
+    void rebuild();
+}
@@ -0,0 +1,40 @@
+package com.community.communitybackend.service;
+
+import com.community.communitybackend.vo.PostLikeVO;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 帖子点赞服务
+ * 点赞关系以 Redis Set（post:like:{postId}）为准，请求中只改 Redis；
+ * post_like 表和 post.like_count 由后台任务批量同步，点赞高峰不会争抢 post 行锁
+ */
+public interface PostLikeService {
+
+    /**
+     * 点赞（重复点赞不报错）
+     */
+    PostLikeVO like(Long userId, Long postId);
+
+    /**
+     * 取消点赞（未点赞时不报错）
+     */
+    PostLikeVO unlike(Long userId, Long postId);
+
+    /**
+     * 获取 Redis 中的实时点赞数，点赞集合尚未加载时返回 null
+     */
+    Integer getLikeCount(Long postId);
+
+    /**
+     * 批量判断用户点赞过哪些帖子（一次 Redis 往返，点赞集合未加载的帖子再查一次数据库）
+     * @return postIds 中该用户已点赞的帖子ID；userId 为空（未登录）时返回空集合
+     */
+    Set<Long> getLikedPostIds(Long userId, Collection<Long> postIds);
+
+    /**
+     * 把累积的点赞变化批量写回数据库
+     */
+    void flush();
+}
@@ -0,0 +1,28 @@
+package com.community.communitybackend.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 帖子最近参与者服务
+ * 每个帖子在 Redis 中维护最近评论的几位用户，发表/删除评论时增量更新，列表页一次批量读取
+ */
+public interface PostParticipantService {
+
+    /**
+     * 批量获取帖子的最近参与者（userId，最近优先）
+     * 缓存中缺失的帖子从评论表补查并回填
+     */
+    Map<Long, List<Long>> getParticipantIds(Collection<Long> postIds);
+
+    /**
+     * 用户发表评论后，把他移到该帖子参与者的最前面
+     */
+    void recordParticipant(Long postId, Long userId);
+
+    /**
+     * 删除评论后清除该帖子的参与者缓存，下次读取时重新统计
+     */
+    void invalidate(Long postId);
+}
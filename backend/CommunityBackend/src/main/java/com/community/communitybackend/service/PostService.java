@@ -2,6 +2,8 @@ package com.community.communitybackend.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.community.communitybackend.dto.PostDTO;
+import com.community.communitybackend.vo.CursorPageVO;
+import com.community.communitybackend.vo.PostListItemVO;
 import com.community.communitybackend.vo.PostVO;
 
 public interface PostService {
@@ -13,18 +15,32 @@ public interface PostService {
 
     /**
      * 获取帖子详情
+     * @param currentUserId 当前登录用户ID（用于判断是否已点赞），未登录为空
      */
-    PostVO getPostDetail(Long postId);
+    PostVO getPostDetail(Long postId, Long currentUserId);
 
     /**
      * 获取帖子列表
      * @param tab 筛选类型: latest, new, hot, my
      * @param clubId 社团ID，可为空
      * @param userId 用户ID（当tab=my时需要）
+     * @param currentUserId 当前登录用户ID（用于判断是否已点赞），未登录为空
      * @param page 页码
      * @param size 每页数量
      */
-    Page<PostVO> getPostList(String tab, Long clubId, Long userId, int page, int size);
+    Page<PostListItemVO> getPostList(String tab, Long clubId, Long userId, Long currentUserId, int page, int size);
+
+    /**
+     * 获取帖子列表（游标分页，不查总数，适合无限滚动）
+     * @param tab 筛选类型: latest, new, hot, my
+     * @param clubId 社团ID，可为空
+     * @param userId 用户ID（当tab=my时需要）
+     * @param currentUserId 当前登录用户ID（用于判断是否已点赞），未登录为空
+     * @param cursor 上一页返回的 nextCursor，第一页传空
+     * @param size 每页数量
+     */
+    CursorPageVO<PostListItemVO> getPostListByCursor(String tab, Long clubId, Long userId, Long currentUserId,
+                                                     String cursor, int size);
 
     /**
      * 更新帖子
@@ -38,6 +54,7 @@ public interface PostService {
 
     /**
      * 增加浏览量
+     * @param viewerKey 访问者标识（登录用户为 u:userId，游客为客户端指纹），去重计数模式下使用
      */
-    void incrementViewCount(Long postId);
+    void incrementViewCount(Long postId, String viewerKey);
 }
@@ -0,0 +1,28 @@
+package com.community.communitybackend.service;
+
+/**
+ * 帖子浏览量计数服务
+ * 浏览量不在请求中直接更新数据库，由后台任务定期批量写回，避免每次浏览都锁一次 post 行
+ *
+ * 两种计数模式（post.view.mode）：
+ *   total  - 每次浏览都计数（内存累加）
+ *   unique - 按访问者去重（Redis HyperLogLog），刷新和爬虫重复访问不再累加
+ */
+public interface PostViewCountService {
+
+    /**
+     * 记录一次浏览
+     * @param viewerKey 访问者标识，unique 模式下用于去重
+     */
+    void recordView(Long postId, String viewerKey);
+
+    /**
+     * 获取尚未写回数据库的浏览增量（用于详情页展示实时浏览量）
+     */
+    long getPendingViews(Long postId);
+
+    /**
+     * 把累积的浏览增量批量写回数据库
+     */
+    void flush();
+}
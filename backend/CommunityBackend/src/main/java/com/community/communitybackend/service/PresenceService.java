@@ -0,0 +1,41 @@
+package com.community.communitybackend.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 在线状态服务
+ *
+ * chat:online:{userId} 为 Set，成员是用户当前有连接的节点ID，5 分钟过期；
+ * 各节点记录本节点在线的用户，每 3 分钟用一个管道批量续期，不再按客户端心跳逐个续期。
+ * 节点宕机后它的标记最多 5 分钟后过期；关闭了「显示在线状态」的用户不写入，对所有人显示离线。
+ */
+public interface PresenceService {
+
+    /**
+     * 用户在本节点的第一个连接建立
+     * @return 是否应通知联系人上线：公开在线状态，且是用户在集群中的第一个节点（隐藏在线状态时不写入在线标记）
+     */
+    boolean online(Long userId);
+
+    /**
+     * 用户在本节点的最后一个连接断开
+     * @return 是否应通知联系人离线：公开了在线状态，且本节点是用户在集群中的最后一个节点
+     */
+    boolean offline(Long userId);
+
+    /**
+     * 用户关闭「显示在线状态」，立即移除在线标记；之前在线时向联系人推送 OFFLINE
+     */
+    void hide(Long userId);
+
+    /**
+     * 批量查询哪些用户在线（一次 Redis 往返）
+     */
+    Set<Long> getOnlineUserIds(Collection<Long> userIds);
+
+    /**
+     * 批量续期本节点在线用户的在线标记
+     */
+    void refresh();
+}
@@ -7,6 +7,9 @@ import com.community.communitybackend.entity.Users;
 import com.community.communitybackend.vo.LoginVO;
 import com.community.communitybackend.vo.UserProfileVO;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * 用户服务接口
  */
@@ -32,6 +35,12 @@ public interface UserService {
      */
     Users getUserByUserId(Long userId);
 
+    /**
+     * 根据业务userId批量查询用户（一次 IN 查询）
+     * @return userId -> 用户
+     */
+    Map<Long, Users> getUsersByUserIds(Collection<Long> userIds);
+
     /**
      * 获取用户完整信息（基本信息 + 详情）
      */
@@ -0,0 +1,283 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.entity.ChatMessage;
+import com.community.communitybackend.entity.ChatRoom;
+import com.community.communitybackend.mapper.ChatMessageMapper;
+import com.community.communitybackend.mapper.ChatRoomMapper;
+import com.community.communitybackend.service.ChatMessageWriter;
+import com.community.communitybackend.service.ChatUnreadService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 聊天消息写入（group 模式为组提交）
+ *
+ * 发送线程把消息放进队列后等待；单个写入线程取出第一条后再等 batch-window-ms（或攒满 max-batch-size），
+ * 一个事务里：一条 SQL 分配全部ID，一条多行 INSERT 写入消息，一条 UPDATE ... FROM (VALUES ...) 更新涉及的聊天室快照
+ * （同一聊天室只保留本批最后一条），提交后再逐个唤醒发送者。
+ * 批量写入失败时逐条重试，只有出错的那条消息返回失败（例如聊天室不存在），其他消息不受影响。
+ * 提交后的未读数更新（查成员表 + Redis）交给单独的未读线程，写入线程只负责写库，不被它拖慢；
+ * 未读线程的队列满时由写入线程自己执行，起到限流作用，未读数不会丢。
+ */
+@Slf4j
+@Service
+public class ChatMessageWriterImpl implements ChatMessageWriter {
+
+    private static final String MODE_GROUP = "group";
+
+    /**
+     * 会话列表中最后一条消息预览的最大长度（字符数）
+     */
+    private static final int PREVIEW_LENGTH = 100;
+
+    /**
+     * 发送者等待写入结果的最长时间
+     */
+    private static final long ACK_TIMEOUT_MS = 10_000;
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final ChatRoomMapper chatRoomMapper;
+    private final ChatUnreadService chatUnreadService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final String mode;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingMessage> queue;
+    private final DistributionSummary batchSizes;
+
+    private final ThreadPoolExecutor unreadExecutor;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public ChatMessageWriterImpl(ChatMessageMapper chatMessageMapper, ChatRoomMapper chatRoomMapper,
+                                 ChatUnreadService chatUnreadService, TransactionTemplate transactionTemplate,
+                                 @Value("${chat.message.write-mode:group}") String mode,
+                                 @Value("${chat.message.batch-window-ms:2}") long batchWindowMs,
+                                 @Value("${chat.message.max-batch-size:500}") int maxBatchSize,
+                                 @Value("${chat.message.queue-capacity:10000}") int queueCapacity,
+                                 MeterRegistry meterRegistry) {
+        this.chatMessageMapper = chatMessageMapper;
+        this.chatRoomMapper = chatRoomMapper;
+        this.chatUnreadService = chatUnreadService;
+        this.transactionTemplate = transactionTemplate;
+        this.mode = mode;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.unreadExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "chat-unread-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Gauge.builder("chat.message.write.queue", queue, Queue::size)
+                .description("等待写入的聊天消息数")
+                .register(meterRegistry);
+        Gauge.builder("chat.message.unread.queue", unreadExecutor, e -> e.getQueue().size())
+                .description("等待更新未读数的消息批次数")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.message.write.batch")
+                .description("每次提交写入的聊天消息数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!MODE_GROUP.equals(mode)) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "chat-message-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writerThread != null) {
+            // 停止接收新消息，队列里剩下的写完再退出
+            running = false;
+            writerThread.join(ACK_TIMEOUT_MS);
+        }
+        unreadExecutor.shutdown();
+        unreadExecutor.awaitTermination(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ChatMessage write(ChatMessage message) {
+        if (!MODE_GROUP.equals(mode)) {
+            List<ChatMessage> single = Collections.singletonList(message);
+            transactionTemplate.executeWithoutResult(status -> persist(single));
+            recordUnread(single);
+            return message;
+        }
+        if (!running) {
+            throw new BusinessException(503, "服务正在关闭，请稍后重试");
+        }
+        PendingMessage pending = new PendingMessage(message);
+        if (!queue.offer(pending)) {
+            throw new BusinessException(503, "消息发送繁忙，请稍后重试");
+        }
+        try {
+            return pending.result.get(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 消息可能稍后仍会写入，客户端按消息ID去重
+            throw new BusinessException(504, "消息发送超时，请稍后刷新确认");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BusinessException be) {
+                throw be;
+            }
+            log.warn("写入聊天消息失败, roomId={}", message.getRoomId(), e.getCause());
+            throw new BusinessException(500, "消息发送失败");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(500, "消息发送失败");
+        }
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // writeBatch 已经处理了写入失败，这里只兜底，写入线程不能退出
+                log.error("聊天消息写入线程异常", e);
+                for (PendingMessage pending : batch) {
+                    pending.result.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在窗口期内继续攒消息，攒满一批提前结束
+     */
+    private void collect(List<PendingMessage> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + batchWindowNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                return;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+        List<ChatMessage> committed = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(messages));
+            for (PendingMessage pending : batch) {
+                pending.result.complete(pending.message);
+            }
+            committed.addAll(messages);
+        } catch (Exception e) {
+            log.warn("批量写入 {} 条聊天消息失败，改为逐条写入", batch.size(), e);
+            for (PendingMessage pending : batch) {
+                try {
+                    List<ChatMessage> single = Collections.singletonList(pending.message);
+                    transactionTemplate.executeWithoutResult(status -> persist(single));
+                    pending.result.complete(pending.message);
+                    committed.add(pending.message);
+                } catch (Exception single) {
+                    pending.result.completeExceptionally(single);
+                }
+            }
+        }
+        batchSizes.record(batch.size());
+        if (!committed.isEmpty()) {
+            unreadExecutor.execute(() -> recordUnread(committed));
+        }
+    }
+
+    /**
+     * 在当前事务中写入消息并更新聊天室快照
+     */
+    private void persist(List<ChatMessage> messages) {
+        List<Long> ids = chatMessageMapper.selectNextIds(messages.size());
+        Collections.sort(ids);
+        LocalDateTime now = LocalDateTime.now();
+        // roomId -> 本批该聊天室的最后一条消息
+        Map<Long, ChatRoom> rooms = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            message.setId(ids.get(i));
+            message.setCreatedAt(now);
+
+            ChatRoom room = new ChatRoom();
+            room.setId(message.getRoomId());
+            room.setLastMessageId(message.getId());
+            room.setLastMessagePreview(preview(message.getContent()));
+            room.setLastSenderId(message.getSenderId());
+            room.setLastMessageAt(now);
+            rooms.put(room.getId(), room);
+        }
+        chatMessageMapper.batchInsert(messages);
+        chatRoomMapper.batchUpdateLastMessage(new ArrayList<>(rooms.values()));
+    }
+
+    private void recordUnread(List<ChatMessage> committed) {
+        try {
+            chatUnreadService.recordMessages(committed);
+        } catch (Exception e) {
+            log.warn("更新未读数失败", e);
+        }
+    }
+
+    /**
+     * 截取消息预览，不会把代理对（emoji）截成两半
+     */
+    private String preview(String content) {
+        if (content.codePointCount(0, content.length()) <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, PREVIEW_LENGTH));
+    }
+
+    private static class PendingMessage {
+
+        private final ChatMessage message;
+
+        private final CompletableFuture<ChatMessage> result = new CompletableFuture<>();
+
+        PendingMessage(ChatMessage message) {
+            this.message = message;
+        }
+    }
+}
@@ -1,168 +1,211 @@
 package com.community.communitybackend.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.exception.BusinessException;
 import com.community.communitybackend.entity.ChatMessage;
-import com.community.communitybackend.entity.ChatRoom;
 import com.community.communitybackend.entity.ChatRoomMember;
 import com.community.communitybackend.entity.Users;
 import com.community.communitybackend.mapper.ChatMessageMapper;
 import com.community.communitybackend.mapper.ChatRoomMapper;
 import com.community.communitybackend.mapper.ChatRoomMemberMapper;
-import com.community.communitybackend.mapper.UserMapper;
+import com.community.communitybackend.service.ChatMessageWriter;
 import com.community.communitybackend.service.ChatService;
+import com.community.communitybackend.service.ChatUnreadService;
+import com.community.communitybackend.service.PresenceService;
+import com.community.communitybackend.service.UserService;
 import com.community.communitybackend.vo.ChatMessageVO;
 import com.community.communitybackend.vo.ChatRoomVO;
+import com.community.communitybackend.vo.CursorPageVO;
+import com.community.communitybackend.websocket.ChatFanoutBus;
+import com.community.communitybackend.websocket.ChatFrame;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ChatServiceImpl implements ChatService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final String ROOM_TYPE_CHANNEL = "channel";
+    private static final String ROOM_TYPE_DIRECT = "direct";
+
     private final ChatRoomMapper chatRoomMapper;
     private final ChatRoomMemberMapper chatRoomMemberMapper;
     private final ChatMessageMapper chatMessageMapper;
-    private final UserMapper userMapper;
+    private final UserService userService;
+    private final ChatUnreadService chatUnreadService;
+    private final ChatMessageWriter chatMessageWriter;
+    private final PresenceService presenceService;
+    private final ChatFanoutBus fanoutBus;
 
     @Override
     public List<ChatRoomVO> getUserChannels(Long userId) {
-        // 获取用户加入的频道
-        LambdaQueryWrapper<ChatRoomMember> memberWrapper = new LambdaQueryWrapper<>();
-        memberWrapper.eq(ChatRoomMember::getUserId, userId);
-
-        List<ChatRoomMember> memberships = chatRoomMemberMapper.selectList(memberWrapper);
-        List<Long> roomIds = memberships.stream()
-                .map(ChatRoomMember::getRoomId)
-                .collect(Collectors.toList());
-
-        if (roomIds.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        // 获取频道信息
-        LambdaQueryWrapper<ChatRoom> roomWrapper = new LambdaQueryWrapper<>();
-        roomWrapper.in(ChatRoom::getId, roomIds);
-        roomWrapper.eq(ChatRoom::getRoomType, "channel");
-
-        List<ChatRoom> rooms = chatRoomMapper.selectList(roomWrapper);
-
-        return rooms.stream().map(room -> convertToRoomVO(room, userId)).collect(Collectors.toList());
+        return getConversations(userId, ROOM_TYPE_CHANNEL);
     }
 
     @Override
     public List<ChatRoomVO> getUserDirectMessages(Long userId) {
-        // 获取用户的私信房间
-        LambdaQueryWrapper<ChatRoomMember> memberWrapper = new LambdaQueryWrapper<>();
-        memberWrapper.eq(ChatRoomMember::getUserId, userId);
+        return getConversations(userId, ROOM_TYPE_DIRECT);
+    }
 
-        List<ChatRoomMember> memberships = chatRoomMemberMapper.selectList(memberWrapper);
-        List<Long> roomIds = memberships.stream()
-                .map(ChatRoomMember::getRoomId)
-                .collect(Collectors.toList());
+    /**
+     * 会话列表一条 SQL 查完（最后一条消息读 chat_room 上的快照，私信对方信息 JOIN 出来），按最后活跃时间倒序
+     * 私信对方的在线状态一次批量查询
+     */
+    private List<ChatRoomVO> getConversations(Long userId, String roomType) {
+        List<ChatRoomVO> rooms = chatRoomMapper.selectConversations(userId, roomType);
+        Map<Long, Integer> unreadCounts = chatUnreadService.getUnreadCounts(userId,
+                rooms.stream().map(ChatRoomVO::getId).collect(Collectors.toList()));
+        Set<Long> onlineUserIds = ROOM_TYPE_DIRECT.equals(roomType)
+                ? presenceService.getOnlineUserIds(rooms.stream().map(ChatRoomVO::getPeerUserId)
+                        .filter(Objects::nonNull).collect(Collectors.toList()))
+                : Set.of();
+        for (ChatRoomVO vo : rooms) {
+            vo.setLastMessageTimeText(formatTimeAgo(vo.getLastMessageTime()));
+            vo.setUnreadCount(unreadCounts.getOrDefault(vo.getId(), 0));
+            if (vo.getPeerUserId() != null) {
+                vo.setOnline(onlineUserIds.contains(vo.getPeerUserId()));
+            }
+        }
+        return rooms;
+    }
 
-        if (roomIds.isEmpty()) {
-            return new ArrayList<>();
+    @Override
+    public CursorPageVO<ChatMessageVO> getChatMessages(Long roomId, Long userId, Long before, Long after, int size) {
+        if (!isRoomMember(roomId, userId)) {
+            throw new BusinessException(403, "不是该聊天室成员");
         }
+        if (before != null && after != null) {
+            throw new BusinessException(400, "before 和 after 不能同时传");
+        }
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
 
-        // 获取私信房间
-        LambdaQueryWrapper<ChatRoom> roomWrapper = new LambdaQueryWrapper<>();
-        roomWrapper.in(ChatRoom::getId, roomIds);
-        roomWrapper.eq(ChatRoom::getRoomType, "direct");
+        // 按 (room_id, created_at, id) 索引做 keyset 分页，每页读取的行数与翻到第几页无关，
+        // 翻页期间有新消息进来也不会重复或漏掉
+        LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ChatMessage::getRoomId, roomId);
+        if (after != null) {
+            ChatMessage anchor = getCursorMessage(roomId, after);
+            wrapper.apply("(created_at, id) > ({0}, {1})", anchor.getCreatedAt(), anchor.getId());
+            wrapper.orderByAsc(ChatMessage::getCreatedAt);
+            wrapper.orderByAsc(ChatMessage::getId);
+        } else {
+            if (before != null) {
+                ChatMessage anchor = getCursorMessage(roomId, before);
+                wrapper.apply("(created_at, id) < ({0}, {1})", anchor.getCreatedAt(), anchor.getId());
+            }
+            wrapper.orderByDesc(ChatMessage::getCreatedAt);
+            wrapper.orderByDesc(ChatMessage::getId);
+        }
+        // 多取一条用来判断是否还有下一页
+        wrapper.last("LIMIT " + (limit + 1));
+        List<ChatMessage> messages = chatMessageMapper.selectList(wrapper);
 
-        List<ChatRoom> rooms = chatRoomMapper.selectList(roomWrapper);
+        boolean hasMore = messages.size() > limit;
+        if (hasMore) {
+            messages = messages.subList(0, limit);
+        }
 
-        return rooms.stream().map(room -> convertToDirectVO(room, userId)).collect(Collectors.toList());
+        CursorPageVO<ChatMessageVO> result = new CursorPageVO<>();
+        result.setRecords(convertToMessageVOs(messages, userId));
+        result.setHasMore(hasMore);
+        result.setNextCursor(hasMore ? String.valueOf(messages.get(messages.size() - 1).getId()) : null);
+        return result;
     }
 
-    @Override
-    public List<ChatMessageVO> getChatMessages(Long roomId, Long userId, int page, int size) {
+    /**
+     * 游标消息：只取排序需要的 created_at，必须属于该聊天室
+     */
+    private ChatMessage getCursorMessage(Long roomId, Long messageId) {
         LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(ChatMessage::getId, ChatMessage::getCreatedAt);
+        wrapper.eq(ChatMessage::getId, messageId);
         wrapper.eq(ChatMessage::getRoomId, roomId);
-        wrapper.orderByDesc(ChatMessage::getCreatedAt);
-        wrapper.last("LIMIT " + size + " OFFSET " + (page - 1) * size);
-
-        List<ChatMessage> messages = chatMessageMapper.selectList(wrapper);
-
-        return messages.stream()
-                .map(msg -> convertToMessageVO(msg, userId))
-                .collect(Collectors.toList());
+        ChatMessage anchor = chatMessageMapper.selectOne(wrapper);
+        if (anchor == null) {
+            throw new BusinessException(400, "无效的分页游标");
+        }
+        return anchor;
     }
 
     @Override
-    @Transactional
     public ChatMessageVO sendMessage(Long userId, Long roomId, String content) {
+        if (!isRoomMember(roomId, userId)) {
+            throw new BusinessException(403, "不是该聊天室成员");
+        }
         ChatMessage message = new ChatMessage();
         message.setRoomId(roomId);
         message.setSenderId(userId);
         message.setContent(content);
-        message.setCreatedAt(LocalDateTime.now());
+        message.setMsgType("TEXT");
+        message.setStatus(1);
 
-        chatMessageMapper.insert(message);
+        // 写入消息、更新聊天室最后一条消息快照和未读数；返回时消息已提交
+        chatMessageWriter.write(message);
 
-        // 更新房间的最后更新时间
-        ChatRoom room = chatRoomMapper.selectById(roomId);
-        if (room != null) {
-            room.setUpdatedAt(LocalDateTime.now());
-            chatRoomMapper.updateById(room);
-        }
-
-        return convertToMessageVO(message, userId);
+        // 推送给聊天室的全部在线成员（包括发送者自己的其他连接），REST 发送的消息也能实时收到
+        ChatMessageVO vo = convertToMessageVO(message, userId);
+        fanoutBus.publish(roomId, ChatFrame.chat(vo));
+        return vo;
     }
 
-    private ChatRoomVO convertToRoomVO(ChatRoom room, Long userId) {
-        ChatRoomVO vo = new ChatRoomVO();
-        vo.setId(room.getId());
-        vo.setName(room.getRoomName());
-        vo.setAvatar(room.getAvatar());
-        vo.setRoomType(room.getRoomType());
-
-        // 获取最后一条消息
-        LambdaQueryWrapper<ChatMessage> msgWrapper = new LambdaQueryWrapper<>();
-        msgWrapper.eq(ChatMessage::getRoomId, room.getId());
-        msgWrapper.orderByDesc(ChatMessage::getCreatedAt);
-        msgWrapper.last("LIMIT 1");
-
-        ChatMessage lastMsg = chatMessageMapper.selectOne(msgWrapper);
-        if (lastMsg != null) {
-            vo.setLastMessage(lastMsg.getContent());
-            vo.setLastMessageTime(lastMsg.getCreatedAt());
-            vo.setLastMessageTimeText(formatTimeAgo(lastMsg.getCreatedAt()));
+    @Override
+    public Long markRead(Long userId, Long roomId, Long messageId) {
+        if (!isRoomMember(roomId, userId)) {
+            throw new BusinessException(403, "不是该聊天室成员");
         }
+        Long readId = chatUnreadService.markRead(userId, roomId, messageId);
 
-        // TODO: 计算未读消息数
-        vo.setUnreadCount(0);
-
-        return vo;
+        ChatFrame receipt = ChatFrame.of(ChatFrame.READ, roomId, userId);
+        receipt.setMessageId(readId);
+        fanoutBus.publish(roomId, receipt);
+        return readId;
     }
 
-    private ChatRoomVO convertToDirectVO(ChatRoom room, Long userId) {
-        ChatRoomVO vo = convertToRoomVO(room, userId);
-
-        // 获取对方用户信息
-        LambdaQueryWrapper<ChatRoomMember> memberWrapper = new LambdaQueryWrapper<>();
-        memberWrapper.eq(ChatRoomMember::getRoomId, room.getId());
-        memberWrapper.ne(ChatRoomMember::getUserId, userId);
+    @Override
+    public boolean isRoomMember(Long roomId, Long userId) {
+        LambdaQueryWrapper<ChatRoomMember> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ChatRoomMember::getRoomId, roomId);
+        wrapper.eq(ChatRoomMember::getUserId, userId);
+        return chatRoomMemberMapper.exists(wrapper);
+    }
 
-        ChatRoomMember otherMember = chatRoomMemberMapper.selectOne(memberWrapper);
-        if (otherMember != null) {
-            Users otherUser = userMapper.selectById(otherMember.getUserId());
-            if (otherUser != null) {
-                vo.setName(otherUser.getNickname() != null ? otherUser.getNickname() : otherUser.getUsername());
-                vo.setAvatar(otherUser.getAvatar());
-            }
-        }
+    @Override
+    public List<Long> getUserRoomIds(Long userId) {
+        LambdaQueryWrapper<ChatRoomMember> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(ChatRoomMember::getRoomId);
+        wrapper.eq(ChatRoomMember::getUserId, userId);
+        return chatRoomMemberMapper.selectList(wrapper).stream()
+                .map(ChatRoomMember::getRoomId)
+                .collect(Collectors.toList());
+    }
 
-        return vo;
+    /**
+     * 批量转换，发送者信息一次查完
+     */
+    private List<ChatMessageVO> convertToMessageVOs(List<ChatMessage> messages, Long userId) {
+        Map<Long, Users> senders = userService.getUsersByUserIds(messages.stream()
+                .map(ChatMessage::getSenderId)
+                .collect(Collectors.toSet()));
+        return messages.stream()
+                .map(msg -> buildMessageVO(msg, userId, senders.get(msg.getSenderId())))
+                .collect(Collectors.toList());
     }
 
     private ChatMessageVO convertToMessageVO(ChatMessage message, Long userId) {
+        return buildMessageVO(message, userId, userService.getUserByUserId(message.getSenderId()));
+    }
+
+    private ChatMessageVO buildMessageVO(ChatMessage message, Long userId, Users sender) {
         ChatMessageVO vo = new ChatMessageVO();
         vo.setId(message.getId());
         vo.setRoomId(message.getRoomId());
@@ -172,8 +215,6 @@ public class ChatServiceImpl implements ChatService {
         vo.setTimeText(formatTimeAgo(message.getCreatedAt()));
         vo.setIsMe(message.getSenderId().equals(userId));
 
-        // 获取发送者信息
-        Users sender = userMapper.selectById(message.getSenderId());
         if (sender != null) {
             vo.setSenderName(sender.getNickname() != null ? sender.getNickname() : sender.getUsername());
             vo.setSenderAvatar(sender.getAvatar());
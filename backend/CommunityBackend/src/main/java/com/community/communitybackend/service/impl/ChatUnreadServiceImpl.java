@@ -0,0 +1,234 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.utils.TransactionUtils;
+import com.community.communitybackend.entity.ChatMessage;
+import com.community.communitybackend.entity.ChatRoom;
+import com.community.communitybackend.entity.ChatRoomMember;
+import com.community.communitybackend.mapper.ChatRoomMapper;
+import com.community.communitybackend.mapper.ChatRoomMemberMapper;
+import com.community.communitybackend.service.ChatUnreadService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 聊天未读数（Redis Hash + 数据库已读位置）
+ *
+ * chat:unread:{userId}  字段 roomId -> 未读数；字段 "_" 是加载标记，没有它说明 Hash 还没从数据库加载（或已过期）
+ *
+ * 消息提交后只给已加载的 Hash 累加新消息条数（INCR_SCRIPT），没加载的用户下次打开会话列表时再从数据库统计一次；
+ * 已读时先推进数据库中的已读位置，再清零 Redis 中的计数。
+ * 数据库统计和并发发送之间有很短的窗口，可能少算一条，下次已读时即被修正。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatUnreadServiceImpl implements ChatUnreadService {
+
+    private static final String UNREAD_PREFIX = "chat:unread:";
+    private static final String LOADED_FIELD = "_";
+
+    /**
+     * 未读 Hash 过期时间（天），过期后下次读取时重新统计
+     */
+    private static final long UNREAD_TTL_DAYS = 7;
+
+    /**
+     * 单次脚本最多处理的成员数，大频道分批发送
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 给已加载的未读 Hash 加未读数：KEYS[i] 为成员的 Hash，ARGV[2i-1]、ARGV[2i] 为 roomId 和增量
+     */
+    private static final DefaultRedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>(
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('EXISTS', key) == 1 then redis.call('HINCRBY', key, ARGV[2 * i - 1], ARGV[2 * i]) end " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 从数据库统计结果重建未读 Hash：ARGV[1] 为过期秒数，之后依次为 roomId、未读数
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', '0') " +
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * Hash 已加载时设置 ARGV[1] 字段为 ARGV[2]
+     */
+    private static final DefaultRedisScript<Long> SET_IF_LOADED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    private final ChatRoomMapper chatRoomMapper;
+    private final ChatRoomMemberMapper chatRoomMemberMapper;
+    private final StringRedisTemplate redisTemplate;
+
+    @Override
+    public void recordMessages(Collection<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            try {
+                incrementUnread(messages);
+            } catch (Exception e) {
+                // 消息已经提交，未读数少算不影响消息本身，成员下次已读时归零
+                log.warn("更新未读数失败", e);
+            }
+        });
+    }
+
+    private void incrementUnread(Collection<ChatMessage> messages) {
+        // roomId -> (发送者 -> 条数)
+        Map<Long, Map<Long, Integer>> sendersByRoom = new HashMap<>();
+        for (ChatMessage message : messages) {
+            sendersByRoom.computeIfAbsent(message.getRoomId(), k -> new HashMap<>())
+                    .merge(message.getSenderId(), 1, Integer::sum);
+        }
+
+        LambdaQueryWrapper<ChatRoomMember> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(ChatRoomMember::getRoomId, ChatRoomMember::getUserId);
+        wrapper.in(ChatRoomMember::getRoomId, sendersByRoom.keySet());
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        for (ChatRoomMember member : chatRoomMemberMapper.selectList(wrapper)) {
+            Map<Long, Integer> senders = sendersByRoom.get(member.getRoomId());
+            int total = senders.values().stream().mapToInt(Integer::intValue).sum();
+            // 自己发的消息不算未读
+            int unread = total - senders.getOrDefault(member.getUserId(), 0);
+            if (unread > 0) {
+                keys.add(UNREAD_PREFIX + member.getUserId());
+                args.add(String.valueOf(member.getRoomId()));
+                args.add(String.valueOf(unread));
+            }
+        }
+        for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, keys.size());
+            redisTemplate.execute(INCR_SCRIPT, keys.subList(from, to), args.subList(from * 2, to * 2).toArray());
+        }
+    }
+
+    @Override
+    public Long markRead(Long userId, Long roomId, Long messageId) {
+        ChatRoom room = chatRoomMapper.selectById(roomId);
+        if (room == null || room.getLastMessageId() == null) {
+            return null;
+        }
+        Long lastMessageId = room.getLastMessageId();
+        boolean readAll = messageId == null || messageId >= lastMessageId;
+        Long readId = readAll ? lastMessageId : messageId;
+        chatRoomMemberMapper.advanceLastRead(roomId, userId, readId);
+
+        String key = UNREAD_PREFIX + userId;
+        try {
+            if (readAll) {
+                redisTemplate.opsForHash().delete(key, String.valueOf(roomId));
+            } else {
+                // 只读到中间某条：剩下的未读数从数据库按已读位置统计（走索引范围扫描，只数未读部分）；
+                // 已读位置不会后退，以推进后的位置为准
+                readId = getLastReadMessageId(roomId, userId, readId);
+                long unread = chatRoomMemberMapper.countUnreadAfter(roomId, userId, readId);
+                redisTemplate.execute(SET_IF_LOADED_SCRIPT, Collections.singletonList(key),
+                        String.valueOf(roomId), String.valueOf(unread));
+            }
+        } catch (Exception e) {
+            // 计数删不掉时让整个 Hash 下次重新统计
+            log.warn("清除未读数失败, userId={}, roomId={}", userId, roomId, e);
+            evictQuietly(key);
+        }
+        return readId;
+    }
+
+    @Override
+    public Map<Long, Integer> getUnreadCounts(Long userId, Collection<Long> roomIds) {
+        Map<Long, Integer> result = new HashMap<>();
+        if (userId == null || roomIds == null || roomIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(roomIds);
+        String key = UNREAD_PREFIX + userId;
+        try {
+            // 加载标记和全部聊天室一次 HMGET 取回
+            List<Object> fields = new ArrayList<>(ids.size() + 1);
+            fields.add(LOADED_FIELD);
+            for (Long roomId : ids) {
+                fields.add(String.valueOf(roomId));
+            }
+            List<Object> values = redisTemplate.opsForHash().multiGet(key, fields);
+            if (values.get(0) != null) {
+                for (int i = 0; i < ids.size(); i++) {
+                    Object value = values.get(i + 1);
+                    result.put(ids.get(i), value != null ? Integer.parseInt(value.toString()) : 0);
+                }
+                return result;
+            }
+        } catch (Exception e) {
+            log.warn("读取未读数失败，改为数据库统计, userId={}", userId, e);
+            return countFromDatabase(userId, ids, false);
+        }
+        return countFromDatabase(userId, ids, true);
+    }
+
+    /**
+     * 从数据库统计用户全部聊天室的未读数
+     * @param load 是否写回 Redis
+     */
+    private Map<Long, Integer> countFromDatabase(Long userId, List<Long> roomIds, boolean load) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Map<String, Object> row : chatRoomMemberMapper.selectUnreadCounts(userId)) {
+            counts.put(((Number) row.get("room_id")).longValue(), ((Number) row.get("unread")).intValue());
+        }
+        if (load) {
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(UNREAD_TTL_DAYS * 24 * 3600));
+            counts.forEach((roomId, unread) -> {
+                if (unread > 0) {
+                    args.add(String.valueOf(roomId));
+                    args.add(String.valueOf(unread));
+                }
+            });
+            try {
+                redisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(UNREAD_PREFIX + userId), args.toArray());
+            } catch (Exception e) {
+                log.warn("加载未读数失败, userId={}", userId, e);
+            }
+        }
+
+        Map<Long, Integer> result = new HashMap<>();
+        for (Long roomId : roomIds) {
+            result.put(roomId, counts.getOrDefault(roomId, 0));
+        }
+        return result;
+    }
+
+    private Long getLastReadMessageId(Long roomId, Long userId, Long defaultId) {
+        LambdaQueryWrapper<ChatRoomMember> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(ChatRoomMember::getLastReadMessageId);
+        wrapper.eq(ChatRoomMember::getRoomId, roomId);
+        wrapper.eq(ChatRoomMember::getUserId, userId);
+        ChatRoomMember member = chatRoomMemberMapper.selectOne(wrapper);
+        return member != null && member.getLastReadMessageId() != null ? member.getLastReadMessageId() : defaultId;
+    }
+
+    private void evictQuietly(String key) {
+        try {
+            redisTemplate.delete(key);
+        } catch (Exception ignored) {
+            // Redis 不可用，Hash 会在过期后重新统计
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.common.utils.TransactionUtils;
+import com.community.communitybackend.service.CommentCacheService;
+import com.community.communitybackend.vo.CommentVO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 帖子评论缓存（Redis Hash）
+ *
+ * post:comments:{postId} 的每个字段是一条评论（评论ID -> 组装好的 CommentVO JSON，不含 replies），
+ * 另有占位字段 "_" 表示已加载，没有评论的帖子也能命中。读取时一次 HGETALL，在内存中按 id 挂接成树。
+ * 发表/编辑/删除评论时只改对应字段（HSET / HDEL），不整体失效，热门帖子的评论区不会因为一条新评论重新查库。
+ *
+ * post:comments:ver:{postId} 是该帖子评论的版本号，每次增量更新都会加一；
+ * 回源加载前先记下版本号，写回时版本号变了说明加载期间有评论变化，放弃写回，避免把旧数据覆盖进缓存。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CommentCacheServiceImpl implements CommentCacheService {
+
+    private static final String COMMENTS_PREFIX = "post:comments:";
+    private static final String VERSION_PREFIX = "post:comments:ver:";
+    private static final String LOADED_FIELD = "_";
+
+    /**
+     * 回源写回：版本号与加载前一致时才整体写入
+     * KEYS[1] 评论 Hash，KEYS[2] 版本号；ARGV[1] 加载前的版本号（没有为空串），ARGV[2] 过期秒数，之后为 字段,值 对
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[2]) or '' " +
+            "if v ~= ARGV[1] then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "for i = 3, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 增量更新：先递增版本号，缓存已加载时再修改对应字段
+     * KEYS[1] 评论 Hash，KEYS[2] 版本号；ARGV[1] 评论ID，ARGV[2] JSON，ARGV[3] 过期秒数，ARGV[4] 操作 append/patch/remove
+     * patch 只替换缓存中已有的评论
+     */
+    private static final DefaultRedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[3]) " +
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "if ARGV[4] == 'remove' then return redis.call('HDEL', KEYS[1], ARGV[1]) end " +
+            "if ARGV[4] == 'patch' and redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final JsonMapper jsonMapper;
+
+    @Value("${post.cache.comments-ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Override
+    public List<CommentVO> getCommentNodes(Long postId, Function<Long, List<CommentVO>> loader) {
+        List<CommentVO> cached = readRemote(postId);
+        if (cached != null) {
+            return cached;
+        }
+
+        String version;
+        try {
+            version = redisTemplate.opsForValue().get(VERSION_PREFIX + postId);
+        } catch (Exception e) {
+            log.warn("读取评论缓存版本失败, postId={}", postId, e);
+            return loader.apply(postId);
+        }
+        List<CommentVO> nodes = loader.apply(postId);
+        writeRemote(postId, version, nodes);
+        return nodes;
+    }
+
+    @Override
+    public void appendComment(CommentVO comment) {
+        update(comment.getPostId(), comment.getId(), comment, "append");
+    }
+
+    @Override
+    public void updateComment(CommentVO comment) {
+        update(comment.getPostId(), comment.getId(), comment, "patch");
+    }
+
+    @Override
+    public void removeComment(Long postId, Long commentId) {
+        update(postId, commentId, null, "remove");
+    }
+
+    /**
+     * 事务提交后再改缓存，回滚的评论不会出现在缓存里
+     */
+    private void update(Long postId, Long commentId, CommentVO comment, String op) {
+        String json = comment != null ? toJson(comment) : "";
+        TransactionUtils.afterCommit(() -> {
+            try {
+                redisTemplate.execute(UPDATE_SCRIPT,
+                        Arrays.asList(COMMENTS_PREFIX + postId, VERSION_PREFIX + postId),
+                        String.valueOf(commentId), json, String.valueOf(ttlSeconds), op);
+            } catch (Exception e) {
+                // 增量更新失败时整体删掉，下次读取重新加载
+                log.warn("更新评论缓存失败, postId={}, commentId={}", postId, commentId, e);
+                try {
+                    redisTemplate.delete(COMMENTS_PREFIX + postId);
+                } catch (Exception ignored) {
+                    // Redis 不可用时只能等缓存过期
+                }
+            }
+        });
+    }
+
+    private List<CommentVO> readRemote(Long postId) {
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(COMMENTS_PREFIX + postId);
+            if (entries.isEmpty()) {
+                return null;
+            }
+            List<CommentVO> nodes = new ArrayList<>(entries.size());
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                if (!LOADED_FIELD.equals(entry.getKey())) {
+                    nodes.add(jsonMapper.readValue((String) entry.getValue(), CommentVO.class));
+                }
+            }
+            return nodes;
+        } catch (Exception e) {
+            log.warn("读取评论缓存失败, postId={}", postId, e);
+            return null;
+        }
+    }
+
+    private void writeRemote(Long postId, String version, List<CommentVO> nodes) {
+        try {
+            List<String> args = new ArrayList<>(nodes.size() * 2 + 4);
+            args.add(version != null ? version : "");
+            args.add(String.valueOf(ttlSeconds));
+            args.add(LOADED_FIELD);
+            args.add("1");
+            for (CommentVO node : nodes) {
+                args.add(String.valueOf(node.getId()));
+                args.add(toJson(node));
+            }
+            redisTemplate.execute(LOAD_SCRIPT,
+                    Arrays.asList(COMMENTS_PREFIX + postId, VERSION_PREFIX + postId),
+                    args.toArray());
+        } catch (Exception e) {
+            log.warn("写入评论缓存失败, postId={}", postId, e);
+        }
+    }
+
+    /**
+     * 序列化单个节点：不带 replies（树在读取时重新挂接），也不带与访问者相关的 isLiked
+     */
+    private String toJson(CommentVO node) {
+        CommentVO copy = new CommentVO();
+        BeanUtils.copyProperties(node, copy);
+        copy.setReplies(null);
+        copy.setIsLiked(null);
+        return jsonMapper.writeValueAsString(copy);
+    }
+}
@@ -0,0 +1,190 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.entity.Comment;
+import com.community.communitybackend.entity.CommentLike;
+import com.community.communitybackend.mapper.CommentLikeMapper;
+import com.community.communitybackend.mapper.CommentMapper;
+import com.community.communitybackend.service.CommentLikeService;
+import com.community.communitybackend.service.CommentRankService;
+import com.community.communitybackend.vo.CommentLikeVO;
+import com.community.communitybackend.vo.CommentVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 评论点赞（Redis Set + 异步写回），与帖子点赞共用 LikeSetStore
+ *
+ * comment:like:{commentId}  点赞用户集合，另含占位成员 "0" 表示已从数据库加载。
+ *                           成员全是整数，Redis 用 intset 紧凑存储（每个成员 8 字节以内），评论数量多也不占太多内存
+ * comment:like:pending / processing / pending:ids  待写回的点赞变化，字段 commentId:userId
+ *
+ * 后台任务批量写入 comment_like、按集合大小覆盖 comment.like_count，再同步顶级评论的点赞排行。
+ * 评论缓存中的点赞数是加载时的快照，读取时由 fillLikeState 叠加实时值。
+ */
+@Slf4j
+@Service
+public class CommentLikeServiceImpl implements CommentLikeService {
+
+    private static final String LIKE_PREFIX = "comment:like:";
+    private static final String LOADED_MEMBER = "0";
+
+    private static final int BATCH_SIZE = 500;
+
+    private final CommentMapper commentMapper;
+    private final CommentLikeMapper commentLikeMapper;
+    private final CommentRankService commentRankService;
+    private final LikeSetStore store;
+
+    public CommentLikeServiceImpl(CommentMapper commentMapper, CommentLikeMapper commentLikeMapper,
+                                  CommentRankService commentRankService, StringRedisTemplate redisTemplate) {
+        this.commentMapper = commentMapper;
+        this.commentLikeMapper = commentLikeMapper;
+        this.commentRankService = commentRankService;
+        this.store = new LikeSetStore(redisTemplate, LIKE_PREFIX, LOADED_MEMBER,
+                commentLikeMapper::selectUserIdsByCommentId, new LikePersister(), "评论点赞");
+    }
+
+    @Override
+    public CommentLikeVO like(Long userId, Long commentId) {
+        return toggle(userId, commentId, true);
+    }
+
+    @Override
+    public CommentLikeVO unlike(Long userId, Long commentId) {
+        return toggle(userId, commentId, false);
+    }
+
+    @Override
+    public void fillLikeState(Collection<CommentVO> comments, Long currentUserId) {
+        if (comments.isEmpty()) {
+            return;
+        }
+        List<CommentVO> list = new ArrayList<>(comments);
+        List<CommentVO> unloaded = new ArrayList<>();
+        try {
+            // 整页一次脚本调用：每条评论的集合大小（集合不存在时为 0，兼作是否已加载的判断）和当前用户是否点赞
+            List<Long> results = store.read(list.stream().map(CommentVO::getId).toList(), currentUserId);
+            for (int i = 0; i < list.size(); i++) {
+                CommentVO comment = list.get(i);
+                long count = results.get(i * 2);
+                if (count > 0) {
+                    comment.setLikeCount((int) (count - 1));
+                    comment.setIsLiked(results.get(i * 2 + 1) == 1);
+                } else {
+                    unloaded.add(comment);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("批量查询评论点赞状态失败", e);
+            unloaded = list;
+        }
+
+        // 点赞集合未加载说明这些评论没有待写回的变化，数据库就是准确的
+        Set<Long> liked = new HashSet<>();
+        if (currentUserId != null && !unloaded.isEmpty()) {
+            LambdaQueryWrapper<CommentLike> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(CommentLike::getCommentId);
+            wrapper.eq(CommentLike::getUserId, currentUserId);
+            wrapper.in(CommentLike::getCommentId, unloaded.stream().map(CommentVO::getId).toList());
+            for (CommentLike like : commentLikeMapper.selectList(wrapper)) {
+                liked.add(like.getCommentId());
+            }
+        }
+        for (CommentVO comment : unloaded) {
+            comment.setIsLiked(liked.contains(comment.getId()));
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${post.comment-like.flush-interval-ms:2000}")
+    public void flush() {
+        store.flush();
+    }
+
+    private CommentLikeVO toggle(Long userId, Long commentId, boolean like) {
+        checkCommentExists(commentId);
+        store.toggle(commentId, userId, like);
+
+        CommentLikeVO vo = new CommentLikeVO();
+        vo.setCommentId(commentId);
+        vo.setLiked(like);
+        vo.setLikeCount(store.getLikeCount(commentId));
+        return vo;
+    }
+
+    private void checkCommentExists(Long commentId) {
+        LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Comment::getId, Comment::getStatus);
+        wrapper.eq(Comment::getId, commentId);
+        Comment comment = commentMapper.selectOne(wrapper);
+        if (comment == null || comment.getStatus() == null || comment.getStatus() != 1) {
+            throw new BusinessException(404, "评论不存在");
+        }
+    }
+
+    /**
+     * 顶级评论的新点赞数按帖子分组后写入排行
+     */
+    private void updateRank(Map<Long, Long> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<Long, Long>> byPost = new HashMap<>();
+        List<Long> ids = new ArrayList<>(counts.keySet());
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(Comment::getId, Comment::getPostId);
+            wrapper.in(Comment::getId, ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())));
+            wrapper.eq(Comment::getParentId, 0);
+            for (Comment comment : commentMapper.selectList(wrapper)) {
+                byPost.computeIfAbsent(comment.getPostId(), k -> new HashMap<>())
+                        .put(comment.getId(), counts.get(comment.getId()));
+            }
+        }
+        commentRankService.updateScores(byPost);
+    }
+
+    private static List<CommentLike> toEntities(List<LikeSetStore.LikeChange> changes) {
+        List<CommentLike> likes = new ArrayList<>(changes.size());
+        for (LikeSetStore.LikeChange change : changes) {
+            CommentLike like = new CommentLike();
+            like.setCommentId(change.targetId());
+            like.setUserId(change.userId());
+            like.setCreatedAt(change.createdAt());
+            likes.add(like);
+        }
+        return likes;
+    }
+
+    /**
+     * 写回 comment_like 和 comment.like_count
+     */
+    private class LikePersister implements LikeSetStore.Persister {
+
+        @Override
+        public void insert(List<LikeSetStore.LikeChange> likes) {
+            commentLikeMapper.batchInsertIgnore(toEntities(likes));
+        }
+
+        @Override
+        public void delete(List<LikeSetStore.LikeChange> likes) {
+            commentLikeMapper.batchDelete(toEntities(likes));
+        }
+
+        @Override
+        public void saveCounts(Map<Long, Long> counts) {
+            commentMapper.batchSetLikeCount(counts);
+        }
+
+        @Override
+        public void afterFlush(Collection<Long> commentIds, Map<Long, Long> counts) {
+            updateRank(counts);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.utils.TransactionUtils;
+import com.community.communitybackend.entity.Comment;
+import com.community.communitybackend.mapper.CommentMapper;
+import com.community.communitybackend.service.CommentRankService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 顶级评论点赞排行（Redis ZSET）
+ *
+ * post:comments:top:{postId} 的成员是顶级评论ID，分数 = 点赞数 * ID_SPAN + 评论ID。
+ * 评论ID 放在低位，分数本身就唯一，点赞数相同的评论按新旧排列，游标只需记住上一页最后一条的分数，
+ * 用开区间按分数定位即可（评论区大量 0 赞的评论同分，按成员字典序翻页不可靠）。
+ * 评论ID 在 2^32 以内、点赞数在 2^21 以内时分数不超过 2^53，double 可以精确表示。
+ *
+ * 占位成员 "_"（分数 -1）表示已从数据库加载；新评论不管是否已加载都直接加入，
+ * 这样加载期间发表的评论也不会丢。分数由点赞写回任务更新，与 comment.like_count 同步。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CommentRankServiceImpl implements CommentRankService {
+
+    private static final String TOP_PREFIX = "post:comments:top:";
+    private static final String LOADED_MEMBER = "_";
+
+    private static final long ID_SPAN = 1L << 32;
+
+    /**
+     * 冷门帖子的排行过期后自然释放内存，下次访问重新加载
+     */
+    private static final Duration TTL = Duration.ofDays(1);
+
+    /**
+     * KEYS[1] 排行；ARGV[1] 评论ID，ARGV[2] 分数，ARGV[3] 过期秒数
+     */
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "local n = redis.call('ZADD', KEYS[1], 'NX', ARGV[2], ARGV[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "return n",
+            Long.class);
+
+    /**
+     * 只更新已在排行中的评论（XX），排行未加载或评论已删除时不处理
+     * KEYS[1] 排行；ARGV 为 分数,评论ID 对
+     */
+    private static final DefaultRedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "return redis.call('ZADD', KEYS[1], 'XX', 'CH', unpack(ARGV))",
+            Long.class);
+
+    private final CommentMapper commentMapper;
+    private final StringRedisTemplate redisTemplate;
+
+    @Override
+    public LinkedHashMap<Long, Long> getTopCommentIdsAfter(Long postId, Long lastLikeCount, Long lastCommentId, int count) {
+        String key = TOP_PREFIX + postId;
+        if (redisTemplate.opsForZSet().score(key, LOADED_MEMBER) == null) {
+            load(postId);
+        }
+
+        double max = lastLikeCount != null && lastCommentId != null
+                ? score(lastLikeCount, lastCommentId) - 1 : Double.POSITIVE_INFINITY;
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, 0, max, 0, count);
+
+        LinkedHashMap<Long, Long> result = new LinkedHashMap<>();
+        if (tuples == null) {
+            return result;
+        }
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getScore() != null) {
+                result.put(Long.parseLong(tuple.getValue()), (long) (tuple.getScore() / ID_SPAN));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void add(Long postId, Long commentId) {
+        afterCommit(() -> redisTemplate.execute(ADD_SCRIPT, Collections.singletonList(TOP_PREFIX + postId),
+                String.valueOf(commentId), String.valueOf(score(0, commentId)), String.valueOf(TTL.getSeconds())));
+    }
+
+    @Override
+    public void remove(Long postId, Long commentId) {
+        afterCommit(() -> redisTemplate.opsForZSet().remove(TOP_PREFIX + postId, String.valueOf(commentId)));
+    }
+
+    @Override
+    public void updateScores(Map<Long, Map<Long, Long>> likeCounts) {
+        likeCounts.forEach((postId, counts) -> {
+            List<String> args = new ArrayList<>(counts.size() * 2);
+            counts.forEach((commentId, likes) -> {
+                args.add(String.valueOf(score(likes, commentId)));
+                args.add(String.valueOf(commentId));
+            });
+            try {
+                redisTemplate.execute(UPDATE_SCRIPT, Collections.singletonList(TOP_PREFIX + postId), args.toArray());
+            } catch (Exception e) {
+                log.warn("更新评论排行失败, postId={}", postId, e);
+            }
+        });
+    }
+
+    /**
+     * 从数据库加载帖子全部顶级评论的点赞数（只查 id、like_count）
+     */
+    private void load(Long postId) {
+        LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Comment::getId, Comment::getLikeCount);
+        wrapper.eq(Comment::getPostId, postId);
+        wrapper.eq(Comment::getParentId, 0);
+        wrapper.eq(Comment::getStatus, 1);
+        List<Comment> comments = commentMapper.selectList(wrapper);
+
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(comments.size() + 1);
+        tuples.add(new DefaultTypedTuple<>(LOADED_MEMBER, -1.0));
+        for (Comment comment : comments) {
+            long likes = comment.getLikeCount() != null ? comment.getLikeCount() : 0;
+            tuples.add(new DefaultTypedTuple<>(String.valueOf(comment.getId()), score(likes, comment.getId())));
+        }
+        String key = TOP_PREFIX + postId;
+        redisTemplate.opsForZSet().add(key, tuples);
+        redisTemplate.expire(key, TTL);
+    }
+
+    private double score(long likeCount, long commentId) {
+        return (double) (likeCount * ID_SPAN + commentId);
+    }
+
+    /**
+     * 在事务中调用时等提交后再写 Redis，回滚的评论不会进入排行
+     */
+    private void afterCommit(Runnable action) {
+        TransactionUtils.afterCommit(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                // 排行只影响「最热」排序，更新失败等过期后重新加载即可
+                log.warn("更新评论排行失败", e);
+            }
+        });
+    }
+}
@@ -2,6 +2,8 @@ package com.community.communitybackend.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.common.utils.CursorUtils;
+import com.community.communitybackend.common.utils.SingleFlight;
 import com.community.communitybackend.dto.CommentDTO;
 import com.community.communitybackend.entity.Comment;
 import com.community.communitybackend.entity.Post;
@@ -9,27 +11,79 @@ import com.community.communitybackend.entity.Users;
 import com.community.communitybackend.mapper.CommentMapper;
 import com.community.communitybackend.mapper.PostMapper;
 import com.community.communitybackend.mapper.UserMapper;
+import com.community.communitybackend.service.CommentCacheService;
+import com.community.communitybackend.service.CommentLikeService;
+import com.community.communitybackend.service.CommentRankService;
 import com.community.communitybackend.service.CommentService;
+import com.community.communitybackend.service.PostCacheService;
+import com.community.communitybackend.service.PostCommentCountService;
+import com.community.communitybackend.service.PostParticipantService;
+import com.community.communitybackend.service.UserService;
 import com.community.communitybackend.vo.CommentVO;
+import com.community.communitybackend.vo.CursorPageVO;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class CommentServiceImpl implements CommentService {
 
+    /**
+     * 评论分页单页最大条数
+     */
+    private static final int MAX_COMMENT_PAGE_SIZE = 50;
+
+    /**
+     * 顶级评论分页时每条评论内联展示的回复数
+     */
+    private static final int INLINE_REPLY_COUNT = 3;
+
     private final CommentMapper commentMapper;
     private final PostMapper postMapper;
     private final UserMapper userMapper;
+    private final UserService userService;
+    private final PostCacheService postCacheService;
+    private final PostParticipantService postParticipantService;
+    private final PostCommentCountService postCommentCountService;
+    private final CommentCacheService commentCacheService;
+    private final CommentLikeService commentLikeService;
+    private final CommentRankService commentRankService;
+
+    /**
+     * 同一帖子的并发评论读取合并为一次缓存读取 / 数据库查询
+     */
+    private final SingleFlight<Long, List<CommentVO>> commentLoader = new SingleFlight<>();
 
     @Override
     public List<CommentVO> getCommentsByPostId(Long postId, Long currentUserId) {
+        // 缓存中的评论节点与访问者无关，并发请求共享同一次读取的结果
+        List<CommentVO> nodes = commentLoader.execute(postId,
+                () -> commentCacheService.getCommentNodes(postId, this::loadCommentNodes));
+
+        // 共享节点复制后再挂接成树、叠加访问者相关字段
+        List<CommentVO> copies = new ArrayList<>(nodes.size());
+        for (CommentVO node : nodes) {
+            CommentVO copy = new CommentVO();
+            BeanUtils.copyProperties(node, copy);
+            copies.add(copy);
+        }
+        copies.sort(Comparator.comparing(CommentVO::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(CommentVO::getId));
+        List<CommentVO> tree = CommentTreeBuilder.link(copies);
+        overlayViewerFields(copies, currentUserId);
+        return tree;
+    }
+
+    /**
+     * 从数据库加载帖子的全部评论并组装成节点（评论缓存未命中时调用）
+     */
+    private List<CommentVO> loadCommentNodes(Long postId) {
         // 获取帖子信息（用于判断楼主）
         Post post = postMapper.selectById(postId);
         Long postOwnerId = post != null ? post.getUserId() : null;
@@ -39,54 +93,233 @@ public class CommentServiceImpl implements CommentService {
         wrapper.eq(Comment::getPostId, postId);
         wrapper.eq(Comment::getStatus, 1);
         wrapper.orderByAsc(Comment::getCreatedAt);
+        wrapper.orderByAsc(Comment::getId);
 
         List<Comment> allComments = commentMapper.selectList(wrapper);
 
-        // 分离顶级评论和子评论
-        List<Comment> topComments = new ArrayList<>();
+        // 所有评论作者一次批量查询
+        Set<Long> userIds = new HashSet<>();
+        for (Comment comment : allComments) {
+            userIds.add(comment.getUserId());
+        }
+        Map<Long, Users> userMap = userService.getUsersByUserIds(userIds);
+
+        return CommentTreeBuilder.toNodes(allComments, userMap, postOwnerId);
+    }
+
+    /**
+     * 叠加不进缓存的字段：相对时间文本、实时点赞数、当前用户是否点赞
+     */
+    private void overlayViewerFields(List<CommentVO> comments, Long currentUserId) {
+        for (CommentVO vo : comments) {
+            vo.setCreatedAtText(CommentTreeBuilder.formatTimeAgo(vo.getCreatedAt()));
+        }
+        commentLikeService.fillLikeState(comments, currentUserId);
+    }
+
+    @Override
+    public CursorPageVO<CommentVO> getCommentPage(Long postId, String sort, String cursor, int size, Long currentUserId) {
+        int limit = Math.min(Math.max(size, 1), MAX_COMMENT_PAGE_SIZE);
+        Post post = postMapper.selectById(postId);
+        if (post == null || post.getStatus() == 0) {
+            throw new BusinessException(404, "帖子不存在");
+        }
+
+        CursorPageVO<CommentVO> result = new CursorPageVO<>();
+        List<Comment> topComments;
+        if ("top".equals(sort)) {
+            // 最热：按评论排行的名次读取，游标为上一页最后一条的（点赞数, 评论ID）
+            String[] key = CursorUtils.decode(cursor, 2);
+            LinkedHashMap<Long, Long> ranked;
+            try {
+                ranked = commentRankService.getTopCommentIdsAfter(postId,
+                        key != null ? Long.valueOf(key[0]) : null, key != null ? Long.valueOf(key[1]) : null, limit + 1);
+            } catch (NumberFormatException e) {
+                throw new BusinessException(400, "无效的分页游标");
+            }
+            List<Long> ids = new ArrayList<>(ranked.keySet());
+            boolean hasMore = ids.size() > limit;
+            if (hasMore) {
+                ids = ids.subList(0, limit);
+            }
+            topComments = selectCommentsInOrder(ids);
+            result.setHasMore(hasMore);
+            if (hasMore) {
+                Long lastId = ids.get(ids.size() - 1);
+                result.setNextCursor(CursorUtils.encode(ranked.get(lastId), lastId));
+            }
+        } else {
+            LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+            wrapper.eq(Comment::getPostId, postId);
+            wrapper.eq(Comment::getParentId, 0);
+            wrapper.eq(Comment::getStatus, 1);
+            topComments = selectPage(wrapper, cursor, limit);
+            boolean hasMore = topComments.size() > limit;
+            if (hasMore) {
+                topComments = topComments.subList(0, limit);
+            }
+            result.setHasMore(hasMore);
+            result.setNextCursor(hasMore ? buildCursor(topComments.get(topComments.size() - 1)) : null);
+        }
+
+        // 一次窗口函数查询取出本页每条顶级评论最早的几条回复，多取一条判断是否还有更多
         Map<Long, List<Comment>> repliesMap = new HashMap<>();
+        if (!topComments.isEmpty()) {
+            List<Long> rootIds = topComments.stream().map(Comment::getId).toList();
+            for (Comment reply : commentMapper.selectFirstRepliesByRootIds(rootIds, INLINE_REPLY_COUNT + 1)) {
+                repliesMap.computeIfAbsent(reply.getRootId(), k -> new ArrayList<>()).add(reply);
+            }
+        }
 
-        for (Comment comment : allComments) {
-            if (comment.getParentId() == null || comment.getParentId() == 0) {
-                topComments.add(comment);
-            } else {
-                repliesMap.computeIfAbsent(comment.getParentId(), k -> new ArrayList<>()).add(comment);
+        List<Comment> pageComments = new ArrayList<>(topComments);
+        repliesMap.values().forEach(replies ->
+                pageComments.addAll(replies.subList(0, Math.min(replies.size(), INLINE_REPLY_COUNT))));
+        Map<Long, CommentVO> voMap = convertToVOs(pageComments, post.getUserId());
+        commentLikeService.fillLikeState(voMap.values(), currentUserId);
+
+        List<CommentVO> records = new ArrayList<>(topComments.size());
+        for (Comment comment : topComments) {
+            CommentVO vo = voMap.get(comment.getId());
+            List<Comment> replies = repliesMap.getOrDefault(comment.getId(), Collections.emptyList());
+            boolean hasMoreReplies = replies.size() > INLINE_REPLY_COUNT;
+            if (hasMoreReplies) {
+                replies = replies.subList(0, INLINE_REPLY_COUNT);
             }
+            List<CommentVO> replyVOs = new ArrayList<>(replies.size());
+            for (Comment reply : replies) {
+                replyVOs.add(voMap.get(reply.getId()));
+            }
+            vo.setReplies(replyVOs);
+            vo.setHasMoreReplies(hasMoreReplies);
+            vo.setRepliesCursor(hasMoreReplies ? buildCursor(replies.get(replies.size() - 1)) : null);
+            records.add(vo);
+        }
+        result.setRecords(records);
+        return result;
+    }
+
+    @Override
+    public CursorPageVO<CommentVO> getReplyPage(Long commentId, String cursor, int size, Long currentUserId) {
+        int limit = Math.min(Math.max(size, 1), MAX_COMMENT_PAGE_SIZE);
+        Comment comment = commentMapper.selectById(commentId);
+        if (comment == null || comment.getStatus() == 0) {
+            throw new BusinessException(404, "评论不存在");
+        }
+        // 传入的是回复时，按它所属的顶级评论查询（root_id 未回填的旧数据按自身查询，不会误查到顶级评论）
+        Long rootId = isTopLevel(comment) || comment.getRootId() == null || comment.getRootId() == 0
+                ? comment.getId() : comment.getRootId();
+
+        LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(Comment::getRootId, rootId);
+        wrapper.eq(Comment::getStatus, 1);
+        List<Comment> replies = selectPage(wrapper, cursor, limit);
+        boolean hasMore = replies.size() > limit;
+        if (hasMore) {
+            replies = replies.subList(0, limit);
         }
 
-        // 转换为VO并组装回复
-        return topComments.stream()
-                .map(comment -> {
-                    CommentVO vo = convertToVO(comment, postOwnerId, currentUserId);
-
-                    // 获取子评论
-                    List<Comment> replies = repliesMap.get(comment.getId());
-                    if (replies != null && !replies.isEmpty()) {
-                        vo.setReplies(replies.stream()
-                                .map(reply -> {
-                                    CommentVO replyVO = convertToVO(reply, postOwnerId, currentUserId);
-                                    // 查找回复目标
-                                    if (reply.getParentId() != null && reply.getParentId() > 0) {
-                                        Comment parentComment = findCommentById(allComments, reply.getParentId());
-                                        if (parentComment != null) {
-                                            Users parentUser = getUserByUserId(parentComment.getUserId());
-                                            if (parentUser != null) {
-                                                replyVO.setReplyToName(parentUser.getNickname() != null ? parentUser.getNickname() : parentUser.getUsername());
-                                            }
-                                        }
-                                    }
-                                    return replyVO;
-                                })
-                                .collect(Collectors.toList()));
-                    }
-
-                    return vo;
-                })
-                .collect(Collectors.toList());
+        Post post = postMapper.selectById(comment.getPostId());
+        Map<Long, CommentVO> voMap = convertToVOs(replies, post != null ? post.getUserId() : null);
+        commentLikeService.fillLikeState(voMap.values(), currentUserId);
+
+        CursorPageVO<CommentVO> result = new CursorPageVO<>();
+        result.setRecords(new ArrayList<>(voMap.values()));
+        result.setHasMore(hasMore);
+        result.setNextCursor(hasMore ? buildCursor(replies.get(replies.size() - 1)) : null);
+        return result;
+    }
+
+    /**
+     * 按 (created_at, id) 正序游标查询，多取一条用来判断是否还有下一页
+     */
+    private List<Comment> selectPage(LambdaQueryWrapper<Comment> wrapper, String cursor, int limit) {
+        String[] key = CursorUtils.decode(cursor, 2);
+        if (key != null) {
+            try {
+                wrapper.apply("(created_at, id) > ({0}, {1})", LocalDateTime.parse(key[0]), Long.parseLong(key[1]));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new BusinessException(400, "无效的分页游标");
+            }
+        }
+        wrapper.orderByAsc(Comment::getCreatedAt);
+        wrapper.orderByAsc(Comment::getId);
+        wrapper.last("LIMIT " + (limit + 1));
+        return commentMapper.selectList(wrapper);
+    }
+
+    private String buildCursor(Comment last) {
+        return CursorUtils.encode(last.getCreatedAt(), last.getId());
+    }
+
+    /**
+     * 按给定ID顺序查询正常状态的评论（排行中残留的已删除评论会被跳过）
+     */
+    private List<Comment> selectCommentsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+        wrapper.in(Comment::getId, ids);
+        wrapper.eq(Comment::getStatus, 1);
+        Map<Long, Comment> commentMap = new HashMap<>();
+        for (Comment comment : commentMapper.selectList(wrapper)) {
+            commentMap.put(comment.getId(), comment);
+        }
+        List<Comment> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Comment comment = commentMap.get(id);
+            if (comment != null) {
+                result.add(comment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量转换一页评论：作者和回复目标一次查询，返回 评论ID -> VO（保持传入顺序）
+     */
+    private Map<Long, CommentVO> convertToVOs(List<Comment> comments, Long postOwnerId) {
+        Map<Long, Long> authorIds = new HashMap<>();
+        Set<Long> userIds = new HashSet<>();
+        for (Comment comment : comments) {
+            authorIds.put(comment.getId(), comment.getUserId());
+            userIds.add(comment.getUserId());
+        }
+
+        // 回复目标不在本页时单独查一次（只取作者）
+        Set<Long> missingParentIds = new HashSet<>();
+        for (Comment comment : comments) {
+            if (!isTopLevel(comment) && !authorIds.containsKey(comment.getParentId())) {
+                missingParentIds.add(comment.getParentId());
+            }
+        }
+        if (!missingParentIds.isEmpty()) {
+            LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(Comment::getId, Comment::getUserId);
+            wrapper.in(Comment::getId, missingParentIds);
+            for (Comment parent : commentMapper.selectList(wrapper)) {
+                authorIds.put(parent.getId(), parent.getUserId());
+                userIds.add(parent.getUserId());
+            }
+        }
+
+        Map<Long, Users> userMap = userService.getUsersByUserIds(userIds);
+        Map<Long, CommentVO> result = new LinkedHashMap<>();
+        for (Comment comment : comments) {
+            CommentVO vo = CommentTreeBuilder.toVO(comment, userMap.get(comment.getUserId()), postOwnerId);
+            if (!isTopLevel(comment)) {
+                Long replyToUserId = authorIds.get(comment.getParentId());
+                if (replyToUserId != null) {
+                    vo.setReplyToName(CommentTreeBuilder.displayName(userMap.get(replyToUserId)));
+                }
+            }
+            result.put(comment.getId(), vo);
+        }
+        return result;
     }
 
-    private Comment findCommentById(List<Comment> comments, Long id) {
-        return comments.stream().filter(c -> c.getId().equals(id)).findFirst().orElse(null);
+    private boolean isTopLevel(Comment comment) {
+        return comment.getParentId() == null || comment.getParentId() == 0;
     }
 
     @Override
@@ -98,21 +331,45 @@ public class CommentServiceImpl implements CommentService {
             throw new BusinessException(404, "帖子不存在");
         }
 
+        // 回复时记下所属的顶级评论，楼中楼回复也直接归到顶级评论下
+        Long parentId = dto.getParentId() != null ? dto.getParentId() : 0L;
+        Long rootId = 0L;
+        Comment parent = null;
+        if (parentId != 0) {
+            parent = commentMapper.selectById(parentId);
+            if (parent == null || parent.getStatus() == 0 || !parent.getPostId().equals(postId)) {
+                throw new BusinessException(404, "回复的评论不存在");
+            }
+            rootId = isTopLevel(parent) ? parent.getId() : parent.getRootId();
+        }
+
         Comment comment = new Comment();
         comment.setPostId(postId);
         comment.setUserId(userId);
         comment.setContent(dto.getContent());
-        comment.setParentId(dto.getParentId() != null ? dto.getParentId() : 0L);
+        comment.setParentId(parentId);
+        comment.setRootId(rootId);
         comment.setLikeCount(0);
         comment.setStatus(1);
         comment.setCreatedAt(LocalDateTime.now());
 
         commentMapper.insert(comment);
 
-        // 更新帖子评论数
-        postMapper.incrementCommentCount(postId);
+        // 更新帖子评论数（热榜随评论数一起刷新）
+        postCommentCountService.recordChange(postId, 1);
+        postParticipantService.recordParticipant(postId, userId);
+        if (parentId == 0) {
+            commentRankService.add(postId, comment.getId());
+        }
+        // 评论数和参与者变了
+        postCacheService.evictPostDetail(postId);
 
-        return convertToVO(comment, post.getUserId(), userId);
+        CommentVO vo = convertToVO(comment, post.getUserId());
+        if (parent != null) {
+            vo.setReplyToName(CommentTreeBuilder.displayName(getUserByUserId(parent.getUserId())));
+        }
+        commentCacheService.appendComment(vo);
+        return vo;
     }
 
     @Override
@@ -130,8 +387,14 @@ public class CommentServiceImpl implements CommentService {
         comment.setStatus(0);
         commentMapper.updateById(comment);
 
-        // 更新帖子评论数
-        postMapper.decrementCommentCount(comment.getPostId());
+        // 更新帖子评论数（热榜随评论数一起刷新）
+        postCommentCountService.recordChange(comment.getPostId(), -1);
+        postParticipantService.invalidate(comment.getPostId());
+        postCacheService.evictPostDetail(comment.getPostId());
+        commentCacheService.removeComment(comment.getPostId(), commentId);
+        if (isTopLevel(comment)) {
+            commentRankService.remove(comment.getPostId(), commentId);
+        }
     }
 
     @Override
@@ -153,32 +416,21 @@ public class CommentServiceImpl implements CommentService {
         comment.setContent(dto.getContent());
         commentMapper.updateById(comment);
 
-        return convertToVO(comment, postOwnerId, userId);
-    }
-
-    private CommentVO convertToVO(Comment comment, Long postOwnerId, Long currentUserId) {
-        CommentVO vo = new CommentVO();
-        vo.setId(comment.getId());
-        vo.setPostId(comment.getPostId());
-        vo.setUserId(comment.getUserId());
-        vo.setContent(comment.getContent());
-        vo.setParentId(comment.getParentId());
-        vo.setLikeCount(comment.getLikeCount());
-        vo.setCreatedAt(comment.getCreatedAt());
-        vo.setCreatedAtText(formatTimeAgo(comment.getCreatedAt()));
-        vo.setIsOwner(comment.getUserId().equals(postOwnerId));
-        vo.setIsLiked(false); // TODO: 从Redis或数据库查询
-
-        // 获取作者信息
-        Users user = getUserByUserId(comment.getUserId());
-        if (user != null) {
-            vo.setAuthorName(user.getNickname() != null ? user.getNickname() : user.getUsername());
-            vo.setAuthorAvatar(user.getAvatar());
+        CommentVO vo = convertToVO(comment, postOwnerId);
+        if (!isTopLevel(comment)) {
+            Comment parent = commentMapper.selectById(comment.getParentId());
+            if (parent != null) {
+                vo.setReplyToName(CommentTreeBuilder.displayName(getUserByUserId(parent.getUserId())));
+            }
         }
-
+        commentCacheService.updateComment(vo);
         return vo;
     }
 
+    private CommentVO convertToVO(Comment comment, Long postOwnerId) {
+        return CommentTreeBuilder.toVO(comment, getUserByUserId(comment.getUserId()), postOwnerId);
+    }
+
     /**
      * 根据业务userId查询用户
      */
@@ -188,17 +440,4 @@ public class CommentServiceImpl implements CommentService {
         wrapper.eq(Users::getUserId, userId);
         return userMapper.selectOne(wrapper);
     }
-
-    private String formatTimeAgo(LocalDateTime time) {
-        if (time == null) return "";
-
-        Duration duration = Duration.between(time, LocalDateTime.now());
-        long minutes = duration.toMinutes();
-
-        if (minutes < 1) return "刚刚";
-        if (minutes < 60) return minutes + "分钟前";
-        if (minutes < 1440) return (minutes / 60) + "小时前";
-        if (minutes < 10080) return (minutes / 1440) + "天前";
-        return (minutes / 10080) + "周前";
-    }
 }
@@ -0,0 +1,163 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.entity.Comment;
+import com.community.communitybackend.entity.Users;
+import com.community.communitybackend.vo.CommentVO;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 评论树构建器
+ * 评论按 id 建索引，回复目标、所属顶级评论都通过 Map 查找，整棵树一次遍历构建完成（O(n)）；
+ * 作者信息由调用方一次批量查好传入，构建过程中不再查库
+ *
+ * 页面只展示两级：楼中楼的回复（回复某条回复）统一挂到它所属的顶级评论下，
+ * 并用 replyToName 标明回复的是谁；祖先评论已删除的回复不再展示
+ */
+public final class CommentTreeBuilder {
+
+    private CommentTreeBuilder() {
+    }
+
+    /**
+     * 构建评论树
+     * @param comments 帖子下的正常评论，按发布时间正序
+     * @param userMap 评论作者 userId -> 用户（至少包含所有评论的作者）
+     * @param postOwnerId 楼主 userId，用于标记 isOwner
+     * @return 顶级评论列表，每条评论的 replies 为其下所有回复（按发布时间正序）
+     */
+    public static List<CommentVO> build(List<Comment> comments, Map<Long, Users> userMap, Long postOwnerId) {
+        return link(toNodes(comments, userMap, postOwnerId));
+    }
+
+    /**
+     * 把评论逐条转换为VO（不挂接回复），回复目标在列表中时填好 replyToName
+     */
+    public static List<CommentVO> toNodes(List<Comment> comments, Map<Long, Users> userMap, Long postOwnerId) {
+        Map<Long, Long> authorIds = new HashMap<>(comments.size() * 2);
+        for (Comment comment : comments) {
+            authorIds.put(comment.getId(), comment.getUserId());
+        }
+        List<CommentVO> nodes = new ArrayList<>(comments.size());
+        for (Comment comment : comments) {
+            CommentVO vo = toVO(comment, userMap.get(comment.getUserId()), postOwnerId);
+            if (!isTopLevel(vo)) {
+                Long replyToUserId = authorIds.get(comment.getParentId());
+                if (replyToUserId != null) {
+                    vo.setReplyToName(displayName(userMap.get(replyToUserId)));
+                }
+            }
+            nodes.add(vo);
+        }
+        return nodes;
+    }
+
+    /**
+     * 把扁平的评论节点挂接成两级树，节点对象直接复用（会设置顶级评论的 replies）
+     * @param nodes 评论节点，按发布时间正序
+     */
+    public static List<CommentVO> link(List<CommentVO> nodes) {
+        Map<Long, CommentVO> nodeMap = new HashMap<>(nodes.size() * 2);
+        for (CommentVO node : nodes) {
+            nodeMap.put(node.getId(), node);
+        }
+
+        List<CommentVO> result = new ArrayList<>();
+        // 评论 id -> 所属顶级评论 id，沿父链查找时记下来，楼层再深也只走一遍
+        Map<Long, Long> rootIds = new HashMap<>(nodes.size() * 2);
+
+        for (CommentVO node : nodes) {
+            if (isTopLevel(node)) {
+                node.setReplies(new ArrayList<>());
+                result.add(node);
+                rootIds.put(node.getId(), node.getId());
+            }
+        }
+
+        for (CommentVO node : nodes) {
+            if (isTopLevel(node)) {
+                continue;
+            }
+            Long rootId = findRootId(node, nodeMap, rootIds);
+            CommentVO root = rootId != null ? nodeMap.get(rootId) : null;
+            if (root != null) {
+                root.getReplies().add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将单条评论转换为VO
+     * @param author 评论作者，可为空
+     */
+    public static CommentVO toVO(Comment comment, Users author, Long postOwnerId) {
+        CommentVO vo = new CommentVO();
+        vo.setId(comment.getId());
+        vo.setPostId(comment.getPostId());
+        vo.setUserId(comment.getUserId());
+        vo.setContent(comment.getContent());
+        vo.setParentId(comment.getParentId());
+        vo.setLikeCount(comment.getLikeCount());
+        vo.setCreatedAt(comment.getCreatedAt());
+        vo.setCreatedAtText(formatTimeAgo(comment.getCreatedAt()));
+        vo.setIsOwner(comment.getUserId().equals(postOwnerId));
+        vo.setIsLiked(false);
+
+        if (author != null) {
+            vo.setAuthorName(displayName(author));
+            vo.setAuthorAvatar(author.getAvatar());
+        }
+        return vo;
+    }
+
+    /**
+     * 沿父链向上找到顶级评论，途经的评论一并记录结果；父评论缺失（已删除）时返回 null
+     */
+    private static Long findRootId(CommentVO node, Map<Long, CommentVO> nodeMap, Map<Long, Long> rootIds) {
+        List<Long> path = new ArrayList<>();
+        CommentVO current = node;
+        Long rootId = null;
+        // 最多走 nodeMap.size() 步，防止脏数据成环时死循环
+        for (int step = 0; step <= nodeMap.size(); step++) {
+            if (rootIds.containsKey(current.getId())) {
+                rootId = rootIds.get(current.getId());
+                break;
+            }
+            path.add(current.getId());
+            CommentVO parent = nodeMap.get(current.getParentId());
+            if (parent == null) {
+                break;
+            }
+            current = parent;
+        }
+        for (Long id : path) {
+            rootIds.put(id, rootId);
+        }
+        return rootId;
+    }
+
+    private static boolean isTopLevel(CommentVO node) {
+        return node.getParentId() == null || node.getParentId() == 0;
+    }
+
+    static String displayName(Users user) {
+        if (user == null) return null;
+        return user.getNickname() != null ? user.getNickname() : user.getUsername();
+    }
+
+    static String formatTimeAgo(LocalDateTime time) {
+        if (time == null) return "";
+
+        Duration duration = Duration.between(time, LocalDateTime.now());
+        long minutes = duration.toMinutes();
+
+        if (minutes < 1) return "刚刚";
+        if (minutes < 60) return minutes + "分钟前";
+        if (minutes < 1440) return (minutes / 60) + "小时前";
+        if (minutes < 10080) return (minutes / 1440) + "天前";
+        return (minutes / 10080) + "周前";
+    }
+}
@@ -0,0 +1,353 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.common.utils.RedisLockUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 点赞集合存储（Redis Set + 异步写回），帖子点赞和评论点赞共用，只是 key 前缀、占位成员和写库方式不同
+ *
+ * {prefix}{targetId}     点赞用户集合，另含占位成员表示已从数据库加载（空集合在 Redis 中无法存在）
+ * {prefix}pending        待写回的点赞变化：字段 targetId:userId，值 1|时间戳（点赞）或 0（取消），同一用户反复点按只保留最后一次
+ * {prefix}processing     正在写回的一批
+ * {prefix}pending:ids    pending 中涉及的目标ID
+ *
+ * 集合加载时带过期时间（LIKE_SET_TTL），读取时续期，冷门内容的集合过期后释放内存；
+ * 有待写回变化时去掉过期时间，写回完成且 pending 中没有新变化时才重新加上。
+ * 因此集合不存在时一定没有待写回的变化，数据库中的点赞记录就是准确的。
+ *
+ * 点赞/取消用 Lua 脚本同时修改集合和待写回记录，保证两者一致；
+ * 后台任务把 pending 整体改名为 processing 后交给 Persister 批量写库，再按集合大小覆盖点赞数。
+ * 写回过程可重入：失败时 processing 保留，下一轮重试。
+ */
+@Slf4j
+class LikeSetStore {
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 点赞集合的过期时间，每次读取时续期
+     */
+    private static final Duration LIKE_SET_TTL = Duration.ofDays(7);
+
+    /**
+     * KEYS[1] 点赞集合，KEYS[2] 待写回 Hash，KEYS[3] 有待写回变化的目标ID集合；
+     * ARGV[1] userId，ARGV[2] 1点赞/0取消，ARGV[3] 待写回字段，ARGV[4] 待写回值，ARGV[5] 目标ID
+     * 返回：-1 集合未加载，否则为集合实际变化的成员数（0 表示重复操作）
+     * 有变化时去掉集合的过期时间，写回完成前集合不会过期
+     */
+    private static final DefaultRedisScript<Long> TOGGLE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "local changed " +
+            "if ARGV[2] == '1' then changed = redis.call('SADD', KEYS[1], ARGV[1]) " +
+            "else changed = redis.call('SREM', KEYS[1], ARGV[1]) end " +
+            "if changed == 1 then " +
+            "  redis.call('HSET', KEYS[2], ARGV[3], ARGV[4]) " +
+            "  redis.call('SADD', KEYS[3], ARGV[5]) " +
+            "  redis.call('PERSIST', KEYS[1]) " +
+            "end " +
+            "return changed",
+            Long.class);
+
+    /**
+     * 上一批还没写完时继续处理上一批，否则把 pending 改名为 processing 开始新的一批
+     * （KEYS[3] 只记录 pending 中的目标，一起清空）
+     */
+    private static final DefaultRedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[2]) == 1 then return 1 end " +
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('RENAME', KEYS[1], KEYS[2]) " +
+            "redis.call('DEL', KEYS[3]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 从数据库加载点赞集合：KEYS[1] 点赞集合；ARGV[1] 过期秒数，之后为成员（含占位成员）
+     * 集合已存在（并发加载或已有待写回的变化）时不处理
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "for i = 2, #ARGV, 1000 do redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV))) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 批量读取：KEYS 为点赞集合；ARGV[1] 过期秒数，ARGV[2] 当前用户ID（未登录为空串）
+     * 每个集合返回 SCARD（0 表示未加载）和当前用户是否点赞；有过期时间的集合顺便续期，没有过期时间的是有待写回变化的，不动
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(
+            "local result = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local size = redis.call('SCARD', key) " +
+            "  result[2 * i - 1] = size " +
+            "  result[2 * i] = 0 " +
+            "  if size > 0 then " +
+            "    if ARGV[2] ~= '' then result[2 * i] = redis.call('SISMEMBER', key, ARGV[2]) end " +
+            "    if redis.call('TTL', key) > 0 then redis.call('EXPIRE', key, ARGV[1]) end " +
+            "  end " +
+            "end " +
+            "return result",
+            List.class);
+
+    /**
+     * 写回完成后给集合加上过期时间：KEYS[1] 有待写回变化的目标ID集合，之后为点赞集合；ARGV[1] 过期秒数，之后为对应的目标ID
+     * 又有了新变化（还在 pending 中）的集合不加
+     */
+    private static final DefaultRedisScript<Long> EXPIRE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #KEYS do " +
+            "  if redis.call('SISMEMBER', KEYS[1], ARGV[i]) == 0 then redis.call('EXPIRE', KEYS[i], ARGV[1]) end " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 一条点赞变化
+     * @param createdAt 点赞时间，取消点赞时为 null
+     */
+    record LikeChange(Long targetId, Long userId, LocalDateTime createdAt) {
+    }
+
+    /**
+     * 写库回调，由各业务实现
+     */
+    interface Persister {
+
+        /**
+         * 批量插入点赞记录（忽略冲突，重复执行结果不变），每批最多 BATCH_SIZE 条
+         */
+        void insert(List<LikeChange> likes);
+
+        /**
+         * 批量删除点赞记录，每批最多 BATCH_SIZE 条
+         */
+        void delete(List<LikeChange> likes);
+
+        /**
+         * 覆盖一批目标的点赞数（值取自集合大小，不含占位成员）
+         */
+        void saveCounts(Map<Long, Long> counts);
+
+        /**
+         * 全部写完后的后续处理（排行等），失败只记日志
+         * @param targetIds 本轮涉及的目标ID
+         * @param counts 本轮覆盖的点赞数
+         */
+        void afterFlush(Collection<Long> targetIds, Map<Long, Long> counts);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final String prefix;
+    private final String loadedMember;
+    private final Function<Long, List<Long>> loader;
+    private final Persister persister;
+    private final String name;
+
+    private final String pendingKey;
+    private final String processingKey;
+    private final String pendingIdsKey;
+    private final String flushLockKey;
+
+    /**
+     * @param prefix 点赞集合的 key 前缀，如 post:like:
+     * @param loadedMember 占位成员
+     * @param loader 从数据库查询目标的全部点赞用户
+     * @param name 日志中的名称
+     */
+    LikeSetStore(StringRedisTemplate redisTemplate, String prefix, String loadedMember,
+                 Function<Long, List<Long>> loader, Persister persister, String name) {
+        this.redisTemplate = redisTemplate;
+        this.prefix = prefix;
+        this.loadedMember = loadedMember;
+        this.loader = loader;
+        this.persister = persister;
+        this.name = name;
+        this.pendingKey = prefix + "pending";
+        this.processingKey = prefix + "processing";
+        this.pendingIdsKey = prefix + "pending:ids";
+        this.flushLockKey = prefix + "flush:lock";
+    }
+
+    /**
+     * 点赞 / 取消点赞，集合未加载时先从数据库加载
+     */
+    void toggle(Long targetId, Long userId, boolean like) {
+        String field = targetId + ":" + userId;
+        String value = like ? "1|" + System.currentTimeMillis() : "0";
+        List<String> keys = Arrays.asList(prefix + targetId, pendingKey, pendingIdsKey);
+        Object[] args = {String.valueOf(userId), like ? "1" : "0", field, value, String.valueOf(targetId)};
+
+        Long changed = redisTemplate.execute(TOGGLE_SCRIPT, keys, args);
+        if (changed != null && changed < 0) {
+            // 第一次访问该集合（或已过期），从数据库加载后重试
+            load(targetId);
+            redisTemplate.execute(TOGGLE_SCRIPT, keys, args);
+        }
+    }
+
+    /**
+     * 实时点赞数，集合未加载时返回 null
+     */
+    Integer getLikeCount(Long targetId) {
+        long size = read(Collections.singletonList(targetId), null).get(0);
+        // 不含占位成员
+        return size > 0 ? (int) (size - 1) : null;
+    }
+
+    /**
+     * 一次脚本调用读取多个点赞集合，并给已写回的集合续期
+     * @return 每个目标依次两个值：集合大小（含占位成员，0 表示未加载）、userId 是否点赞（1/0）
+     */
+    @SuppressWarnings("unchecked")
+    List<Long> read(List<Long> targetIds, Long userId) {
+        List<String> keys = new ArrayList<>(targetIds.size());
+        for (Long targetId : targetIds) {
+            keys.add(prefix + targetId);
+        }
+        return (List<Long>) redisTemplate.execute(READ_SCRIPT, keys,
+                String.valueOf(LIKE_SET_TTL.getSeconds()), userId != null ? String.valueOf(userId) : "");
+    }
+
+    /**
+     * 把累积的点赞变化批量写回数据库
+     */
+    void flush() {
+        // 多个节点只允许一个同时写回
+        String lockToken = RedisLockUtils.tryLock(redisTemplate, flushLockKey, Duration.ofSeconds(60));
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            Long claimed = redisTemplate.execute(CLAIM_SCRIPT, Arrays.asList(pendingKey, processingKey, pendingIdsKey));
+            if (claimed == null || claimed == 0) {
+                return;
+            }
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(processingKey);
+            Set<Long> targetIds = persist(entries);
+            redisTemplate.delete(processingKey);
+            expire(targetIds);
+        } catch (Exception e) {
+            log.warn("{}写回失败，将在下一轮重试", name, e);
+        } finally {
+            RedisLockUtils.unlock(redisTemplate, flushLockKey, lockToken);
+        }
+    }
+
+    /**
+     * 从数据库加载点赞集合（带占位成员和过期时间，集合已存在时不处理，并发加载也没关系）
+     */
+    private void load(Long targetId) {
+        List<Long> userIds = loader.apply(targetId);
+        Object[] args = new Object[userIds.size() + 2];
+        args[0] = String.valueOf(LIKE_SET_TTL.getSeconds());
+        args[1] = loadedMember;
+        for (int i = 0; i < userIds.size(); i++) {
+            args[i + 2] = String.valueOf(userIds.get(i));
+        }
+        redisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(prefix + targetId), args);
+    }
+
+    /**
+     * @return 涉及的目标ID
+     */
+    private Set<Long> persist(Map<Object, Object> entries) {
+        List<LikeChange> inserts = new ArrayList<>();
+        List<LikeChange> deletes = new ArrayList<>();
+        Set<Long> targetIds = new LinkedHashSet<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            String[] ids = ((String) entry.getKey()).split(":");
+            String value = (String) entry.getValue();
+            Long targetId = Long.parseLong(ids[0]);
+            Long userId = Long.parseLong(ids[1]);
+            targetIds.add(targetId);
+            if (value.startsWith("1")) {
+                long millis = Long.parseLong(value.substring(2));
+                inserts.add(new LikeChange(targetId, userId,
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault())));
+            } else {
+                deletes.add(new LikeChange(targetId, userId, null));
+            }
+        }
+
+        for (int from = 0; from < inserts.size(); from += BATCH_SIZE) {
+            persister.insert(inserts.subList(from, Math.min(from + BATCH_SIZE, inserts.size())));
+        }
+        for (int from = 0; from < deletes.size(); from += BATCH_SIZE) {
+            persister.delete(deletes.subList(from, Math.min(from + BATCH_SIZE, deletes.size())));
+        }
+
+        // 点赞数合并为每个目标一次覆盖写，值取自集合大小，重复执行结果不变
+        List<Long> ids = new ArrayList<>(targetIds);
+        Map<Long, Long> allCounts = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            Map<Long, Long> counts = loadLikeCounts(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())));
+            if (!counts.isEmpty()) {
+                persister.saveCounts(counts);
+                allCounts.putAll(counts);
+            }
+        }
+        try {
+            persister.afterFlush(ids, allCounts);
+        } catch (Exception e) {
+            log.warn("{}写回后的后续处理失败", name, e);
+        }
+        log.debug("{}写回完成: 新增 {}, 取消 {}, 涉及 {} 个目标", name, inserts.size(), deletes.size(), ids.size());
+        return targetIds;
+    }
+
+    /**
+     * 一次管道批量 SCARD
+     */
+    private Map<Long, Long> loadLikeCounts(List<Long> targetIds) {
+        List<Object> sizes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long targetId : targetIds) {
+                    ops.opsForSet().size(prefix + targetId);
+                }
+                return null;
+            }
+        });
+        Map<Long, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < targetIds.size(); i++) {
+            long size = sizes.get(i) != null ? ((Number) sizes.get(i)).longValue() : 0;
+            // 集合不存在（Redis 数据丢失）时不覆盖，保留数据库中的值
+            if (size > 0) {
+                counts.put(targetIds.get(i), size - 1);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 写回完成后给涉及的集合重新加上过期时间（pending 中又有变化的除外）
+     */
+    private void expire(Collection<Long> targetIds) {
+        List<Long> ids = new ArrayList<>(targetIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            List<String> keys = new ArrayList<>(batch.size() + 1);
+            List<String> args = new ArrayList<>(batch.size() + 1);
+            keys.add(pendingIdsKey);
+            args.add(String.valueOf(LIKE_SET_TTL.getSeconds()));
+            for (Long targetId : batch) {
+                keys.add(prefix + targetId);
+                args.add(String.valueOf(targetId));
+            }
+            redisTemplate.execute(EXPIRE_SCRIPT, keys, args.toArray());
+        }
+    }
+}
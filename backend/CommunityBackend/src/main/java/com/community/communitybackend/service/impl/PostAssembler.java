@@ -0,0 +1,253 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.utils.HtmlTextUtils;
+import com.community.communitybackend.entity.Club;
+import com.community.communitybackend.entity.Post;
+import com.community.communitybackend.entity.Users;
+import com.community.communitybackend.mapper.ClubMapper;
+import com.community.communitybackend.service.PostParticipantService;
+import com.community.communitybackend.service.UserService;
+import com.community.communitybackend.vo.PostListItemVO;
+import com.community.communitybackend.vo.PostVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 帖子VO批量组装器
+ * 先收集一页帖子涉及的 userId / clubId / postId，用固定次数的 IN 查询批量加载，
+ * 再在内存中组装 PostVO，避免列表中每个帖子各查一遍作者、社团和参与者（N+1）
+ */
+@Component
+@RequiredArgsConstructor
+public class PostAssembler {
+
+    private final UserService userService;
+    private final ClubMapper clubMapper;
+    private final PostParticipantService postParticipantService;
+
+    /**
+     * 组装单个帖子（详情、创建、更新时使用）
+     */
+    public PostVO assemble(Post post) {
+        return assemble(Collections.singletonList(post)).get(0);
+    }
+
+    /**
+     * 批量组装帖子列表，返回顺序与传入顺序一致
+     */
+    public List<PostVO> assemble(List<Post> posts) {
+        if (posts == null || posts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Related related = loadRelated(posts);
+        List<PostVO> result = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            result.add(convertToVO(post, related));
+        }
+        return result;
+    }
+
+    /**
+     * 批量组装列表卡片（不含正文），返回顺序与传入顺序一致
+     */
+    public List<PostListItemVO> assembleListItems(List<Post> posts) {
+        if (posts == null || posts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Related related = loadRelated(posts);
+        List<PostListItemVO> result = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            result.add(convertToListItem(post, related));
+        }
+        return result;
+    }
+
+    /**
+     * 收集一批帖子涉及的作者、社团、参与者，各用一次查询加载
+     */
+    private Related loadRelated(List<Post> posts) {
+        Set<Long> postIds = new HashSet<>();
+        Set<Long> clubIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        for (Post post : posts) {
+            postIds.add(post.getId());
+            if (post.getClubId() != null) {
+                clubIds.add(post.getClubId());
+            }
+            if (!Boolean.TRUE.equals(post.getIsAnonymous())) {
+                userIds.add(post.getUserId());
+            }
+        }
+
+        // 参与者：Redis 中增量维护，一次 MGET 读取整批帖子
+        Related related = new Related();
+        related.participantIds = postParticipantService.getParticipantIds(postIds);
+        related.participantIds.values().forEach(userIds::addAll);
+
+        related.users = userService.getUsersByUserIds(userIds);
+        related.clubs = loadClubs(clubIds);
+        return related;
+    }
+
+    private Map<Long, Club> loadClubs(Collection<Long> clubIds) {
+        Map<Long, Club> clubMap = new HashMap<>();
+        if (clubIds.isEmpty()) {
+            return clubMap;
+        }
+        LambdaQueryWrapper<Club> wrapper = new LambdaQueryWrapper<>();
+        wrapper.in(Club::getId, clubIds);
+        for (Club club : clubMapper.selectList(wrapper)) {
+            clubMap.put(club.getId(), club);
+        }
+        return clubMap;
+    }
+
+    /**
+     * 将Post实体转换为PostVO（所需关联数据均已批量加载）
+     */
+    private PostVO convertToVO(Post post, Related related) {
+        PostVO vo = new PostVO();
+        vo.setId(post.getId());
+        vo.setTitle(post.getTitle());
+        vo.setContent(post.getContent());
+        vo.setSummary(summaryOf(post));
+        vo.setImages(post.getImages() != null ? Arrays.asList(post.getImages().split(",")) : new ArrayList<>());
+        vo.setTags(post.getTags() != null ? Arrays.asList(post.getTags().split(",")) : new ArrayList<>());
+        vo.setViewCount(post.getViewCount());
+        vo.setLikeCount(post.getLikeCount());
+        vo.setCommentCount(post.getCommentCount());
+        vo.setPinned(post.getPinned() != null && post.getPinned());
+        vo.setIsHot(isHot(post));
+        vo.setCreatedAt(post.getCreatedAt());
+        vo.setUpdatedAt(post.getUpdatedAt());
+        vo.setLastActiveTime(formatTimeAgo(post.getUpdatedAt()));
+        vo.setIsAnonymous(post.getIsAnonymous());
+
+        // 作者信息
+        vo.setUserId(post.getUserId());
+        if (post.getIsAnonymous() != null && post.getIsAnonymous()) {
+            vo.setAuthorName("匿名用户");
+            vo.setAuthorAvatar(null);
+        } else {
+            Users user = related.users.get(post.getUserId());
+            if (user != null) {
+                vo.setAuthorName(user.getNickname() != null ? user.getNickname() : user.getUsername());
+                vo.setAuthorAvatar(user.getAvatar());
+            }
+        }
+
+        // 社团信息
+        if (post.getClubId() != null) {
+            Club club = related.clubs.get(post.getClubId());
+            if (club != null) {
+                vo.setClubId(club.getId());
+                vo.setClubName(club.getName());
+                vo.setClubColor(club.getColor());
+            }
+        }
+
+        vo.setParticipants(buildParticipants(post, related));
+        return vo;
+    }
+
+    /**
+     * 将Post实体转换为列表卡片
+     */
+    private PostListItemVO convertToListItem(Post post, Related related) {
+        PostListItemVO vo = new PostListItemVO();
+        vo.setId(post.getId());
+        vo.setTitle(post.getTitle());
+        vo.setSummary(summaryOf(post));
+        vo.setTags(post.getTags() != null ? Arrays.asList(post.getTags().split(",")) : new ArrayList<>());
+        vo.setViewCount(post.getViewCount());
+        vo.setLikeCount(post.getLikeCount());
+        vo.setCommentCount(post.getCommentCount());
+        vo.setPinned(post.getPinned() != null && post.getPinned());
+        vo.setIsHot(isHot(post));
+        vo.setCreatedAt(post.getCreatedAt());
+        vo.setLastActiveTime(formatTimeAgo(post.getUpdatedAt()));
+        vo.setIsAnonymous(post.getIsAnonymous());
+
+        // 作者信息
+        vo.setUserId(post.getUserId());
+        if (post.getIsAnonymous() != null && post.getIsAnonymous()) {
+            vo.setAuthorName("匿名用户");
+        } else {
+            Users user = related.users.get(post.getUserId());
+            if (user != null) {
+                vo.setAuthorName(user.getNickname() != null ? user.getNickname() : user.getUsername());
+                vo.setAuthorAvatar(user.getAvatar());
+            }
+        }
+
+        // 社团信息
+        if (post.getClubId() != null) {
+            Club club = related.clubs.get(post.getClubId());
+            if (club != null) {
+                vo.setClubId(club.getId());
+                vo.setClubName(club.getName());
+                vo.setClubColor(club.getColor());
+            }
+        }
+
+        vo.setParticipants(buildParticipants(post, related));
+        return vo;
+    }
+
+    /**
+     * 参与者（最近评论的用户）
+     */
+    private List<PostVO.ParticipantVO> buildParticipants(Post post, Related related) {
+        List<PostVO.ParticipantVO> participants = new ArrayList<>();
+        for (Long uid : related.participantIds.getOrDefault(post.getId(), Collections.emptyList())) {
+            Users user = related.users.get(uid);
+            if (user != null) {
+                PostVO.ParticipantVO p = new PostVO.ParticipantVO();
+                p.setUserId(user.getUserId());
+                p.setName(user.getNickname() != null ? user.getNickname() : user.getUsername());
+                p.setAvatar(user.getAvatar());
+                participants.add(p);
+            }
+        }
+        return participants;
+    }
+
+    private String summaryOf(Post post) {
+        // 摘要在发帖时已生成；尚未回填的历史帖子在读取了正文时（详情）临时计算
+        return post.getSummary() != null ? post.getSummary() : HtmlTextUtils.summarize(post.getContent());
+    }
+
+    private boolean isHot(Post post) {
+        return post.getLikeCount() > 50 || post.getCommentCount() > 20;
+    }
+
+    /**
+     * 格式化时间为"xx前"
+     */
+    private String formatTimeAgo(LocalDateTime time) {
+        if (time == null) return "";
+
+        Duration duration = Duration.between(time, LocalDateTime.now());
+        long minutes = duration.toMinutes();
+
+        if (minutes < 1) return "刚刚";
+        if (minutes < 60) return minutes + "分钟前";
+        if (minutes < 1440) return (minutes / 60) + "小时前";
+        if (minutes < 10080) return (minutes / 1440) + "天前";
+        return (minutes / 10080) + "周前";
+    }
+
+    /**
+     * 一批帖子的关联数据
+     */
+    private static class Related {
+        private Map<Long, List<Long>> participantIds;
+        private Map<Long, Users> users;
+        private Map<Long, Club> clubs;
+    }
+}
@@ -0,0 +1,324 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.common.utils.SingleFlight;
+import com.community.communitybackend.common.utils.TransactionUtils;
+import com.community.communitybackend.service.PostCacheService;
+import com.community.communitybackend.vo.PostVO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 帖子详情两级缓存
+ *
+ * 读：L1（本进程 Caffeine）-> L2（Redis JSON）-> 数据库，逐级回填
+ *     L1 未命中时同一帖子只允许一个线程去读 L2 / 数据库，其余线程等待共享结果（single-flight）；
+ *     不存在的帖子（404）也会短时间缓存，防止反复查询不存在的ID穿透到数据库
+ * 写：帖子修改/删除、评论变化时删除 L2、递增版本号 post:detail:ver:{postId}，并通过 Redis 发布/订阅通知所有节点清除各自的 L1；
+ *     回源前先记下版本号，写回时版本号变了说明加载期间帖子被修改过（读到的可能是提交前的旧数据），L1、L2 都不回填
+ * 计数：浏览量、点赞数、评论数写回后只更新 post:counts:{postId}，不删缓存；
+ *     它的过期时间是 L1 + L2 的过期时间，过期时说明之后没有写回过，仍在缓存中的详情都是写回之后加载的
+ */
+@Slf4j
+@Service
+public class PostCacheServiceImpl implements PostCacheService, MessageListener {
+
+    private static final String DETAIL_PREFIX = "post:detail:";
+    private static final String INVALIDATE_CHANNEL = "post:detail:invalidate";
+    private static final String COUNTS_PREFIX = "post:counts:";
+    private static final String VERSION_PREFIX = "post:detail:ver:";
+
+    /**
+     * 回源写回：版本号与加载前一致时才写入
+     * KEYS[1] 详情，KEYS[2] 版本号；ARGV[1] 加载前的版本号（没有为空串），ARGV[2] 值，ARGV[3] 过期秒数
+     */
+    private static final DefaultRedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[2]) or '' " +
+            "if v ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 失效：KEYS 依次为各帖子的 详情, 版本号；ARGV[1] 版本号的过期秒数
+     */
+    private static final DefaultRedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #KEYS, 2 do " +
+            "  redis.call('DEL', KEYS[i]) " +
+            "  redis.call('INCR', KEYS[i + 1]) " +
+            "  redis.call('EXPIRE', KEYS[i + 1], ARGV[1]) " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 写入计数：KEYS 为各帖子的计数 Hash；ARGV[1] 字段，ARGV[2] 过期秒数，ARGV[3] 是否只增不减，之后依次为各帖子的值
+     * 浏览量只增不减，多个节点的写回结果乱序到达时不会被旧值覆盖
+     */
+    private static final DefaultRedisScript<Long> PUT_COUNTS_SCRIPT = new DefaultRedisScript<>(
+            "for i, key in ipairs(KEYS) do " +
+            "  local value = ARGV[i + 3] " +
+            "  local current = redis.call('HGET', key, ARGV[1]) " +
+            "  if ARGV[3] == '0' or not current or tonumber(current) < tonumber(value) then " +
+            "    redis.call('HSET', key, ARGV[1], value) " +
+            "  end " +
+            "  redis.call('EXPIRE', key, ARGV[2]) " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 帖子不存在时写入 L2 的占位值
+     */
+    private static final String NOT_FOUND_VALUE = "__404__";
+
+    /**
+     * 帖子不存在时写入 L1 的占位对象（按引用比较）
+     */
+    private static final PostVO NOT_FOUND = new PostVO();
+
+    private final StringRedisTemplate redisTemplate;
+    private final JsonMapper jsonMapper;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${post.cache.l1-max-size:10000}")
+    private long l1MaxSize;
+
+    @Value("${post.cache.l1-ttl-seconds:30}")
+    private long l1TtlSeconds;
+
+    @Value("${post.cache.l2-ttl-seconds:600}")
+    private long l2TtlSeconds;
+
+    @Value("${post.cache.negative-ttl-seconds:60}")
+    private long negativeTtlSeconds;
+
+    private final SingleFlight<Long, PostVO> singleFlight = new SingleFlight<>();
+
+    private Cache<Long, PostVO> localCache;
+
+    private Counter l2HitCounter;
+    private Counter l2MissCounter;
+
+    public PostCacheServiceImpl(StringRedisTemplate redisTemplate, JsonMapper jsonMapper,
+                                RedisMessageListenerContainer listenerContainer, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.jsonMapper = jsonMapper;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(l1MaxSize)
+                .expireAfterWrite(Duration.ofSeconds(l1TtlSeconds))
+                .recordStats()
+                .build();
+        // L1 命中/未命中/淘汰等指标：cache.gets、cache.evictions ...（cache=post.detail.l1）
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "post.detail.l1");
+
+        l2HitCounter = Counter.builder("post.detail.l2")
+                .tag("result", "hit")
+                .description("帖子详情 Redis 缓存命中次数")
+                .register(meterRegistry);
+        l2MissCounter = Counter.builder("post.detail.l2")
+                .tag("result", "miss")
+                .description("帖子详情 Redis 缓存未命中次数")
+                .register(meterRegistry);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public PostVO getPostDetail(Long postId, Function<Long, PostVO> loader) {
+        PostVO vo = localCache.getIfPresent(postId);
+        if (vo == null) {
+            vo = singleFlight.execute(postId, () -> loadThrough(postId, loader));
+        }
+        if (vo == NOT_FOUND) {
+            throw new BusinessException(404, "帖子不存在");
+        }
+        return vo;
+    }
+
+    /**
+     * 依次读取 L2、数据库并回填缓存，帖子不存在时返回 NOT_FOUND 占位
+     */
+    private PostVO loadThrough(Long postId, Function<Long, PostVO> loader) {
+        PostVO vo = readRemote(postId);
+        if (vo != null) {
+            localCache.put(postId, vo);
+            return vo;
+        }
+
+        // 先记下版本号再回源，读不到版本号（Redis 不可用）时为 null
+        String version;
+        try {
+            version = Objects.requireNonNullElse(redisTemplate.opsForValue().get(VERSION_PREFIX + postId), "");
+        } catch (Exception e) {
+            log.warn("读取帖子详情缓存版本失败, postId={}", postId, e);
+            version = null;
+        }
+        try {
+            vo = loader.apply(postId);
+        } catch (BusinessException e) {
+            if (e.getCode() != 404) {
+                throw e;
+            }
+            vo = NOT_FOUND;
+        }
+        if (writeRemote(postId, version, vo)) {
+            localCache.put(postId, vo);
+        }
+        return vo;
+    }
+
+    @Override
+    public void evictPostDetail(Long postId) {
+        evictPostDetails(List.of(postId));
+    }
+
+    @Override
+    public void evictPostDetails(Collection<Long> postIds) {
+        if (postIds == null || postIds.isEmpty()) {
+            return;
+        }
+        // 在事务中调用时等提交后再删，避免其他请求在提交前把旧数据重新读进缓存
+        List<Long> ids = new ArrayList<>(postIds);
+        TransactionUtils.afterCommit(() -> doEvict(ids));
+    }
+
+    private void doEvict(Collection<Long> postIds) {
+        localCache.invalidateAll(postIds);
+        try {
+            List<String> keys = new ArrayList<>(postIds.size() * 2);
+            for (Long postId : postIds) {
+                keys.add(DETAIL_PREFIX + postId);
+                keys.add(VERSION_PREFIX + postId);
+            }
+            // 版本号比正在进行的回源活得久就够了，取 L2 的过期时间
+            redisTemplate.execute(EVICT_SCRIPT, keys, String.valueOf(l2TtlSeconds));
+            String message = postIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            // L2 删除失败时只能等过期，L1 的 TTL 很短，最终也会一致
+            log.warn("删除帖子详情缓存失败, postIds={}", postIds, e);
+        }
+    }
+
+    @Override
+    public void putCounts(String field, Map<Long, Long> counts) {
+        if (counts == null || counts.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(counts.size());
+        List<String> args = new ArrayList<>(counts.size() + 3);
+        args.add(field);
+        args.add(String.valueOf(l1TtlSeconds + l2TtlSeconds));
+        args.add(COUNT_VIEW.equals(field) ? "1" : "0");
+        counts.forEach((postId, value) -> {
+            keys.add(COUNTS_PREFIX + postId);
+            args.add(String.valueOf(value));
+        });
+        try {
+            redisTemplate.execute(PUT_COUNTS_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            // 写不进去时只能让缓存失效，否则详情页的计数会一直落后到缓存过期
+            log.warn("记录帖子计数失败，改为删除详情缓存, field={}", field, e);
+            evictPostDetails(counts.keySet());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounts(Long postId) {
+        Map<String, Long> counts = new HashMap<>();
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(COUNTS_PREFIX + postId);
+            entries.forEach((field, value) -> counts.put(field.toString(), Long.parseLong(value.toString())));
+        } catch (Exception e) {
+            log.warn("读取帖子计数失败, postId={}", postId, e);
+        }
+        return counts;
+    }
+
+    /**
+     * 收到其他节点（包括自己）的失效通知，清除本地缓存
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (String id : body.split(",")) {
+            if (!id.isEmpty()) {
+                localCache.invalidate(Long.parseLong(id));
+            }
+        }
+    }
+
+    private PostVO readRemote(Long postId) {
+        try {
+            String json = redisTemplate.opsForValue().get(DETAIL_PREFIX + postId);
+            if (json == null) {
+                l2MissCounter.increment();
+                return null;
+            }
+            l2HitCounter.increment();
+            if (NOT_FOUND_VALUE.equals(json)) {
+                return NOT_FOUND;
+            }
+            return jsonMapper.readValue(json, PostVO.class);
+        } catch (Exception e) {
+            log.warn("读取帖子详情缓存失败, postId={}", postId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 版本号未变时写入 L2（帖子不存在时写入占位值）
+     * @param version 回源前的版本号，为 null 时不写 L2
+     * @return 是否可以回填 L1：版本号变了返回 false；Redis 不可用时无从判断，返回 true，靠 L1 的短 TTL 兜底
+     */
+    private boolean writeRemote(Long postId, String version, PostVO vo) {
+        if (version == null) {
+            return true;
+        }
+        try {
+            String value = vo == NOT_FOUND ? NOT_FOUND_VALUE : jsonMapper.writeValueAsString(vo);
+            long ttl = vo == NOT_FOUND ? negativeTtlSeconds : l2TtlSeconds;
+            Long written = redisTemplate.execute(WRITE_SCRIPT,
+                    Arrays.asList(DETAIL_PREFIX + postId, VERSION_PREFIX + postId),
+                    version, value, String.valueOf(ttl));
+            return written == null || written == 1;
+        } catch (Exception e) {
+            log.warn("写入帖子详情缓存失败, postId={}", postId, e);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.common.utils.RedisLockUtils;
+import com.community.communitybackend.common.utils.TransactionUtils;
+import com.community.communitybackend.entity.Post;
+import com.community.communitybackend.mapper.PostMapper;
+import com.community.communitybackend.service.PostCacheService;
+import com.community.communitybackend.service.PostCommentCountService;
+import com.community.communitybackend.service.PostHotRankService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 帖子评论数延迟写回（deferred 模式）
+ *
+ * post:comment:delta       待写回的评论数增量：字段 postId，值为累计增量（HINCRBY，可为负）
+ * post:comment:processing  正在写回的一批
+ * post:comment:inflight    正在写入数据库的一小批（最多 BATCH_SIZE 个帖子），post:comment:inflight:token 为批次号
+ *
+ * 发表/删除评论只在事务提交后 HINCRBY 一次，不再在事务里更新 post 行；
+ * 后台任务把 delta 改名为 processing，每小批先原子地从 processing 移到 inflight，
+ * 再在同一事务里记录批次号（post_comment_count_batch）并用一条 UPDATE ... FROM (VALUES ...) 累加到 post.comment_count。
+ * 事务失败时把 inflight 放回 processing；进程在中途退出时，下一轮按批次号是否已写入决定丢弃还是放回，
+ * 同一批增量不会累加两次。
+ * 读取时把 delta 和 processing 中的增量加到数据库的值上（不读 inflight，写入期间最多短暂少算一小批，不会多算）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostCommentCountServiceImpl implements PostCommentCountService {
+
+    private static final String MODE_DEFERRED = "deferred";
+    private static final String DELTA_KEY = "post:comment:delta";
+    private static final String PROCESSING_KEY = "post:comment:processing";
+    private static final String INFLIGHT_KEY = "post:comment:inflight";
+    private static final String INFLIGHT_TOKEN_KEY = "post:comment:inflight:token";
+    private static final String FLUSH_LOCK_KEY = "post:comment:flush:lock";
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 上一批还没写完时继续处理上一批，否则把 delta 改名为 processing 开始新的一批
+     */
+    private static final DefaultRedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[2]) == 1 then return 1 end " +
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('RENAME', KEYS[1], KEYS[2]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 把一批字段从 processing 移到 inflight 并记录批次号：KEYS[1] processing，KEYS[2] inflight，KEYS[3] 批次号；
+     * ARGV[1] 批次号，之后为帖子ID
+     */
+    private static final DefaultRedisScript<Long> BEGIN_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #ARGV do " +
+            "  local v = redis.call('HGET', KEYS[1], ARGV[i]) " +
+            "  if v then " +
+            "    redis.call('HSET', KEYS[2], ARGV[i], v) " +
+            "    redis.call('HDEL', KEYS[1], ARGV[i]) " +
+            "  end " +
+            "end " +
+            "redis.call('SET', KEYS[3], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 批次没有写入数据库：把 inflight 累加回 processing（KEYS[1] processing，KEYS[2] inflight，KEYS[3] 批次号）
+     */
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>(
+            "local entries = redis.call('HGETALL', KEYS[2]) " +
+            "for i = 1, #entries, 2 do redis.call('HINCRBY', KEYS[1], entries[i], entries[i + 1]) end " +
+            "redis.call('DEL', KEYS[2], KEYS[3]) " +
+            "return 1",
+            Long.class);
+
+    private final PostMapper postMapper;
+    private final PostHotRankService postHotRankService;
+    private final PostCacheService postCacheService;
+    private final StringRedisTemplate redisTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 计数模式：direct（事务内直接更新）/ deferred（Redis 累加后批量写回）
+     */
+    @Value("${post.comment-count.mode:deferred}")
+    private String mode;
+
+    @Override
+    public void recordChange(Long postId, int delta) {
+        if (!MODE_DEFERRED.equals(mode)) {
+            updateDirectly(postId, delta);
+            postHotRankService.refresh(Collections.singletonList(postId));
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            try {
+                redisTemplate.opsForHash().increment(DELTA_KEY, String.valueOf(postId), delta);
+            } catch (Exception e) {
+                // Redis 不可用时退回直接更新，评论已经提交，计数不能丢
+                log.warn("记录评论数增量失败，直接更新数据库, postId={}", postId, e);
+                updateDirectly(postId, delta);
+            }
+        });
+    }
+
+    @Override
+    public Map<Long, Long> getPendingDeltas(Collection<Long> postIds) {
+        Map<Long, Long> result = new HashMap<>();
+        if (!MODE_DEFERRED.equals(mode) || postIds == null || postIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(postIds);
+        List<Object> fields = new ArrayList<>(ids.size());
+        for (Long postId : ids) {
+            fields.add(String.valueOf(postId));
+        }
+        try {
+            // 一次管道读两个 Hash：尚未认领的增量和正在写回的增量
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForHash().multiGet(DELTA_KEY, fields);
+                    ops.opsForHash().multiGet(PROCESSING_KEY, fields);
+                    return null;
+                }
+            });
+            for (Object values : results) {
+                List<?> list = (List<?>) values;
+                for (int i = 0; i < ids.size(); i++) {
+                    Object value = list.get(i);
+                    if (value != null) {
+                        result.merge(ids.get(i), Long.parseLong(value.toString()), Long::sum);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // 读不到增量时展示数据库中的值，最多落后一个写回周期
+            log.warn("读取评论数增量失败", e);
+        }
+        return result;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${post.comment-count.flush-interval-ms:2000}")
+    public void flush() {
+        if (!MODE_DEFERRED.equals(mode)) {
+            return;
+        }
+        // 多个节点只允许一个同时写回
+        String lockToken = RedisLockUtils.tryLock(redisTemplate, FLUSH_LOCK_KEY, Duration.ofSeconds(60));
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            // 上次写到一半退出时先处理遗留的 inflight
+            recoverInflight();
+            Long claimed = redisTemplate.execute(CLAIM_SCRIPT, Arrays.asList(DELTA_KEY, PROCESSING_KEY));
+            if (claimed == null || claimed == 0) {
+                return;
+            }
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(PROCESSING_KEY);
+            persist(entries);
+        } catch (Exception e) {
+            log.warn("评论数写回失败，将在下一轮重试", e);
+        } finally {
+            RedisLockUtils.unlock(redisTemplate, FLUSH_LOCK_KEY, lockToken);
+        }
+    }
+
+    private void persist(Map<Object, Object> entries) {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        List<Object> zeroFields = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            long delta = Long.parseLong((String) entry.getValue());
+            if (delta == 0) {
+                // 发表后又删除，增量抵消
+                zeroFields.add(entry.getKey());
+            } else {
+                deltas.put(Long.parseLong((String) entry.getKey()), delta);
+            }
+        }
+        if (!zeroFields.isEmpty()) {
+            redisTemplate.opsForHash().delete(PROCESSING_KEY, zeroFields.toArray());
+        }
+
+        List<Long> postIds = new ArrayList<>(deltas.keySet());
+        for (int from = 0; from < postIds.size(); from += BATCH_SIZE) {
+            List<Long> batchIds = postIds.subList(from, Math.min(from + BATCH_SIZE, postIds.size()));
+            Map<Long, Long> batch = new LinkedHashMap<>();
+            for (Long postId : batchIds) {
+                batch.put(postId, deltas.get(postId));
+            }
+            List<Post> updated = apply(batch);
+
+            // 详情缓存不删，读取时用最新评论数覆盖
+            Map<Long, Long> counts = new HashMap<>();
+            for (Post post : updated) {
+                counts.put(post.getId(), post.getCommentCount().longValue());
+            }
+            postCacheService.putCounts(PostCacheService.COUNT_COMMENT, counts);
+            try {
+                postHotRankService.refresh(batchIds);
+            } catch (Exception e) {
+                log.warn("评论数写回后刷新热榜失败", e);
+            }
+        }
+        log.debug("评论数写回完成: 涉及 {} 个帖子", postIds.size());
+    }
+
+    /**
+     * 写入一小批：先移到 inflight，再在一个事务里记录批次号并累加评论数
+     */
+    private List<Post> apply(Map<Long, Long> batch) {
+        String token = UUID.randomUUID().toString();
+        List<String> args = new ArrayList<>(batch.size() + 1);
+        args.add(token);
+        for (Long postId : batch.keySet()) {
+            args.add(String.valueOf(postId));
+        }
+        redisTemplate.execute(BEGIN_SCRIPT, Arrays.asList(PROCESSING_KEY, INFLIGHT_KEY, INFLIGHT_TOKEN_KEY), args.toArray());
+
+        List<Post> updated;
+        try {
+            updated = transactionTemplate.execute(status -> {
+                postMapper.insertCommentCountBatch(token);
+                return postMapper.batchIncrementCommentCount(batch);
+            });
+        } catch (RuntimeException e) {
+            // 提交结果未知时（例如提交后连接断开）也按批次号判断，数据库不可用时留给下一轮处理
+            try {
+                recoverInflight();
+            } catch (Exception ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
+        clearInflight(token);
+        return updated;
+    }
+
+    /**
+     * 处理上次遗留的 inflight：批次号已写入数据库说明这批已经累加过，直接丢弃，否则放回 processing
+     */
+    private void recoverInflight() {
+        String token = redisTemplate.opsForValue().get(INFLIGHT_TOKEN_KEY);
+        if (token == null) {
+            return;
+        }
+        if (postMapper.existsCommentCountBatch(token)) {
+            clearInflight(token);
+        } else {
+            restoreInflight();
+        }
+        log.info("已处理遗留的评论数写回批次, token={}", token);
+    }
+
+    private void restoreInflight() {
+        redisTemplate.execute(RESTORE_SCRIPT, Arrays.asList(PROCESSING_KEY, INFLIGHT_KEY, INFLIGHT_TOKEN_KEY));
+    }
+
+    private void clearInflight(String token) {
+        redisTemplate.delete(Arrays.asList(INFLIGHT_KEY, INFLIGHT_TOKEN_KEY));
+        try {
+            // inflight 已清理，批次号不会再被查询
+            postMapper.deleteCommentCountBatch(token);
+        } catch (Exception e) {
+            log.warn("删除评论数写回批次记录失败, token={}", token, e);
+        }
+    }
+
+    private void updateDirectly(Long postId, int delta) {
+        if (delta > 0) {
+            postMapper.incrementCommentCount(postId);
+        } else if (delta < 0) {
+            postMapper.decrementCommentCount(postId);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.entity.Club;
+import com.community.communitybackend.entity.Post;
+import com.community.communitybackend.mapper.ClubMapper;
+import com.community.communitybackend.mapper.PostMapper;
+import com.community.communitybackend.service.PostHotRankService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 帖子热榜（Redis ZSET）
+ *
+ * 热度公式：score = log10(likes*3 + comments*5 + views*0.1 + 1) + 发布时间秒数 / decaySeconds
+ * 等价于「互动量 × 10^(-帖龄/decaySeconds)」的指数时间衰减：帖子每老 decaySeconds 秒，
+ * 需要多 10 倍的互动才能保持名次。分数只和帖子自身数据有关、不随当前时间变化，
+ * 所以只在互动变化时重算这一个帖子即可，不需要定时给全表重新打分。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostHotRankServiceImpl implements PostHotRankService {
+
+    private static final String HOT_ALL_KEY = "post:hot:all";
+    private static final String HOT_CLUB_PREFIX = "post:hot:club:";
+
+    private static final double LIKE_WEIGHT = 3;
+    private static final double COMMENT_WEIGHT = 5;
+    private static final double VIEW_WEIGHT = 0.1;
+
+    /**
+     * 同分的帖子按成员字典序排列，游标翻页时多取几条用来跳过已返回的同分帖子
+     */
+    private static final int TIE_SLACK = 16;
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final PostMapper postMapper;
+    private final ClubMapper clubMapper;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 衰减周期（秒）：默认 12.5 小时互动量差一个数量级
+     */
+    @Value("${post.hot.decay-seconds:45000}")
+    private long decaySeconds;
+
+    /**
+     * 每个热榜最多保留的帖子数
+     */
+    @Value("${post.hot.max-size:1000}")
+    private long maxSize;
+
+    /**
+     * 重建热榜时只统计最近多少天的帖子
+     */
+    @Value("${post.hot.window-days:30}")
+    private long windowDays;
+
+    @Override
+    public void refresh(Post post) {
+        if (post == null) {
+            return;
+        }
+        if (post.getStatus() == null || post.getStatus() != 1) {
+            remove(post.getId(), post.getClubId());
+            return;
+        }
+        String member = String.valueOf(post.getId());
+        double score = calculateScore(post);
+        try {
+            redisTemplate.opsForZSet().add(HOT_ALL_KEY, member, score);
+            if (post.getClubId() != null) {
+                redisTemplate.opsForZSet().add(HOT_CLUB_PREFIX + post.getClubId(), member, score);
+            }
+        } catch (Exception e) {
+            // 热榜只是派生数据，Redis 异常不影响主流程，下次重建会补上
+            log.warn("刷新帖子热度失败, postId={}", post.getId(), e);
+        }
+    }
+
+    @Override
+    public void refresh(Collection<Long> postIds) {
+        if (postIds == null || postIds.isEmpty()) {
+            return;
+        }
+        LambdaQueryWrapper<Post> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Post::getId, Post::getClubId, Post::getStatus, Post::getViewCount,
+                Post::getLikeCount, Post::getCommentCount, Post::getCreatedAt);
+        wrapper.in(Post::getId, postIds);
+        addAll(postMapper.selectList(wrapper));
+    }
+
+    @Override
+    public void remove(Long postId, Long clubId) {
+        String member = String.valueOf(postId);
+        try {
+            redisTemplate.opsForZSet().remove(HOT_ALL_KEY, member);
+            if (clubId != null) {
+                redisTemplate.opsForZSet().remove(HOT_CLUB_PREFIX + clubId, member);
+            }
+        } catch (Exception e) {
+            log.warn("移出热榜失败, postId={}", postId, e);
+        }
+    }
+
+    @Override
+    public List<Long> getHotPostIds(Long clubId, long offset, int count) {
+        Set<String> members = redisTemplate.opsForZSet().reverseRange(key(clubId), offset, offset + count - 1);
+        List<Long> ids = new ArrayList<>();
+        if (members != null) {
+            for (String member : members) {
+                ids.add(Long.parseLong(member));
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public LinkedHashMap<Long, Double> getHotPostIdsAfter(Long clubId, Double maxScore, Long lastPostId, int count) {
+        LinkedHashMap<Long, Double> result = new LinkedHashMap<>();
+        Set<ZSetOperations.TypedTuple<String>> tuples;
+        if (maxScore == null) {
+            tuples = redisTemplate.opsForZSet().reverseRangeWithScores(key(clubId), 0, count - 1);
+        } else {
+            tuples = redisTemplate.opsForZSet().reverseRangeByScoreWithScores(
+                    key(clubId), Double.NEGATIVE_INFINITY, maxScore, 0, count + TIE_SLACK);
+        }
+        if (tuples == null) {
+            return result;
+        }
+
+        String lastMember = lastPostId != null ? String.valueOf(lastPostId) : null;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (result.size() >= count) {
+                break;
+            }
+            // 与上一页最后一条同分的帖子里，字典序不小于它的已经返回过了
+            if (maxScore != null && tuple.getScore() != null && tuple.getScore().equals(maxScore)
+                    && lastMember != null && tuple.getValue().compareTo(lastMember) >= 0) {
+                continue;
+            }
+            result.put(Long.parseLong(tuple.getValue()), tuple.getScore());
+        }
+        return result;
+    }
+
+    @Override
+    public long count(Long clubId) {
+        Long size = redisTemplate.opsForZSet().zCard(key(clubId));
+        return size != null ? size : 0;
+    }
+
+    @Override
+    public void rebuild() {
+        LocalDateTime since = LocalDateTime.now().minusDays(windowDays);
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            // 按 id 分批读取，只查计算热度需要的列
+            LambdaQueryWrapper<Post> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(Post::getId, Post::getClubId, Post::getStatus, Post::getViewCount,
+                    Post::getLikeCount, Post::getCommentCount, Post::getCreatedAt);
+            wrapper.eq(Post::getStatus, 1);
+            wrapper.ge(Post::getCreatedAt, since);
+            wrapper.gt(Post::getId, lastId);
+            wrapper.orderByAsc(Post::getId);
+            wrapper.last("LIMIT " + REBUILD_BATCH_SIZE);
+
+            List<Post> posts = postMapper.selectList(wrapper);
+            if (posts.isEmpty()) {
+                break;
+            }
+            addAll(posts);
+            total += posts.size();
+            lastId = posts.get(posts.size() - 1).getId();
+        }
+        trim();
+        log.info("热榜重建完成, 共 {} 个帖子", total);
+    }
+
+    /**
+     * 启动完成后重建一次，保证 Redis 被清空后热榜也能恢复
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("启动时重建热榜失败", e);
+        }
+    }
+
+    /**
+     * 定时重建并裁剪热榜，纠正增量更新中可能遗漏的数据
+     */
+    @Scheduled(cron = "${post.hot.rebuild-cron:0 0 * * * *}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("定时重建热榜失败", e);
+        }
+    }
+
+    /**
+     * 批量写入热榜：每个 key 一次 ZADD，已删除的帖子一并移出
+     */
+    private void addAll(List<Post> posts) {
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> tuplesByKey = new HashMap<>();
+        for (Post post : posts) {
+            if (post.getStatus() == null || post.getStatus() != 1) {
+                remove(post.getId(), post.getClubId());
+                continue;
+            }
+            ZSetOperations.TypedTuple<String> tuple =
+                    new DefaultTypedTuple<>(String.valueOf(post.getId()), calculateScore(post));
+            tuplesByKey.computeIfAbsent(HOT_ALL_KEY, k -> new HashSet<>()).add(tuple);
+            if (post.getClubId() != null) {
+                tuplesByKey.computeIfAbsent(HOT_CLUB_PREFIX + post.getClubId(), k -> new HashSet<>()).add(tuple);
+            }
+        }
+        try {
+            tuplesByKey.forEach((key, tuples) -> redisTemplate.opsForZSet().add(key, tuples));
+        } catch (Exception e) {
+            log.warn("批量刷新帖子热度失败", e);
+        }
+    }
+
+    /**
+     * 只保留每个热榜分数最高的 maxSize 个帖子
+     */
+    private void trim() {
+        List<String> keys = new ArrayList<>();
+        keys.add(HOT_ALL_KEY);
+        // 社团数量很少，直接从库里取，避免在 Redis 上执行 KEYS
+        LambdaQueryWrapper<Club> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Club::getId);
+        for (Club club : clubMapper.selectList(wrapper)) {
+            keys.add(HOT_CLUB_PREFIX + club.getId());
+        }
+        for (String key : keys) {
+            redisTemplate.opsForZSet().removeRange(key, 0, -(maxSize + 1));
+        }
+    }
+
+    private double calculateScore(Post post) {
+        double weight = nullToZero(post.getLikeCount()) * LIKE_WEIGHT
+                + nullToZero(post.getCommentCount()) * COMMENT_WEIGHT
+                + nullToZero(post.getViewCount()) * VIEW_WEIGHT
+                + 1;
+        LocalDateTime createdAt = post.getCreatedAt() != null ? post.getCreatedAt() : LocalDateTime.now();
+        long createdSeconds = createdAt.atZone(ZoneId.systemDefault()).toEpochSecond();
+        return Math.log10(weight) + (double) createdSeconds / decaySeconds;
+    }
+
+    private int nullToZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private String key(Long clubId) {
+        return clubId != null ? HOT_CLUB_PREFIX + clubId : HOT_ALL_KEY;
+    }
+}
@@ -0,0 +1,175 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.entity.Post;
+import com.community.communitybackend.entity.PostLike;
+import com.community.communitybackend.mapper.PostLikeMapper;
+import com.community.communitybackend.mapper.PostMapper;
+import com.community.communitybackend.service.PostCacheService;
+import com.community.communitybackend.service.PostHotRankService;
+import com.community.communitybackend.service.PostLikeService;
+import com.community.communitybackend.vo.PostLikeVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 帖子点赞（Redis Set + 异步写回，存储和写回流程见 LikeSetStore）
+ *
+ * post:like:{postId}  点赞用户集合，另含占位成员 "_" 表示已从数据库加载
+ * post:like:pending / processing / pending:ids  待写回的点赞变化，字段 postId:userId
+ *
+ * 后台任务批量写入 post_like（插入忽略冲突、批量删除），再按集合大小批量覆盖 post.like_count，
+ * 同时更新详情缓存中的点赞数和热榜。
+ */
+@Slf4j
+@Service
+public class PostLikeServiceImpl implements PostLikeService {
+
+    private static final String LIKE_PREFIX = "post:like:";
+    private static final String LOADED_MEMBER = "_";
+
+    private final PostMapper postMapper;
+    private final PostLikeMapper postLikeMapper;
+    private final PostHotRankService postHotRankService;
+    private final PostCacheService postCacheService;
+    private final LikeSetStore store;
+
+    public PostLikeServiceImpl(PostMapper postMapper, PostLikeMapper postLikeMapper,
+                               PostHotRankService postHotRankService, PostCacheService postCacheService,
+                               StringRedisTemplate redisTemplate) {
+        this.postMapper = postMapper;
+        this.postLikeMapper = postLikeMapper;
+        this.postHotRankService = postHotRankService;
+        this.postCacheService = postCacheService;
+        this.store = new LikeSetStore(redisTemplate, LIKE_PREFIX, LOADED_MEMBER,
+                postLikeMapper::selectUserIdsByPostId, new LikePersister(), "帖子点赞");
+    }
+
+    @Override
+    public PostLikeVO like(Long userId, Long postId) {
+        return toggle(userId, postId, true);
+    }
+
+    @Override
+    public PostLikeVO unlike(Long userId, Long postId) {
+        return toggle(userId, postId, false);
+    }
+
+    @Override
+    public Integer getLikeCount(Long postId) {
+        try {
+            return store.getLikeCount(postId);
+        } catch (Exception e) {
+            log.warn("读取点赞数失败, postId={}", postId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Set<Long> getLikedPostIds(Long userId, Collection<Long> postIds) {
+        Set<Long> liked = new HashSet<>();
+        if (userId == null || postIds == null || postIds.isEmpty()) {
+            return liked;
+        }
+        List<Long> ids = new ArrayList<>(postIds);
+        List<Long> unloaded = new ArrayList<>();
+        try {
+            // 整页一次脚本调用：每个帖子的集合大小（0 表示未加载）和是否点赞
+            List<Long> results = store.read(ids, userId);
+            for (int i = 0; i < ids.size(); i++) {
+                if (results.get(i * 2) == 0) {
+                    unloaded.add(ids.get(i));
+                } else if (results.get(i * 2 + 1) == 1) {
+                    liked.add(ids.get(i));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("批量查询点赞状态失败", e);
+            unloaded = ids;
+        }
+
+        // 点赞集合未加载说明这些帖子没有待写回的变化，数据库就是准确的
+        if (!unloaded.isEmpty()) {
+            LambdaQueryWrapper<PostLike> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(PostLike::getPostId);
+            wrapper.eq(PostLike::getUserId, userId);
+            wrapper.in(PostLike::getPostId, unloaded);
+            for (PostLike like : postLikeMapper.selectList(wrapper)) {
+                liked.add(like.getPostId());
+            }
+        }
+        return liked;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${post.like.flush-interval-ms:2000}")
+    public void flush() {
+        store.flush();
+    }
+
+    private PostLikeVO toggle(Long userId, Long postId, boolean like) {
+        checkPostExists(postId);
+        store.toggle(postId, userId, like);
+
+        PostLikeVO vo = new PostLikeVO();
+        vo.setPostId(postId);
+        vo.setLiked(like);
+        vo.setLikeCount(getLikeCount(postId));
+        return vo;
+    }
+
+    private void checkPostExists(Long postId) {
+        LambdaQueryWrapper<Post> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Post::getId, Post::getStatus);
+        wrapper.eq(Post::getId, postId);
+        Post post = postMapper.selectOne(wrapper);
+        if (post == null || post.getStatus() == null || post.getStatus() != 1) {
+            throw new BusinessException(404, "帖子不存在");
+        }
+    }
+
+    private static List<PostLike> toEntities(List<LikeSetStore.LikeChange> changes) {
+        List<PostLike> likes = new ArrayList<>(changes.size());
+        for (LikeSetStore.LikeChange change : changes) {
+            PostLike like = new PostLike();
+            like.setPostId(change.targetId());
+            like.setUserId(change.userId());
+            like.setCreatedAt(change.createdAt());
+            likes.add(like);
+        }
+        return likes;
+    }
+
+    /**
+     * 写回 post_like 和 post.like_count
+     */
+    private class LikePersister implements LikeSetStore.Persister {
+
+        @Override
+        public void insert(List<LikeSetStore.LikeChange> likes) {
+            postLikeMapper.batchInsertIgnore(toEntities(likes));
+        }
+
+        @Override
+        public void delete(List<LikeSetStore.LikeChange> likes) {
+            postLikeMapper.batchDelete(toEntities(likes));
+        }
+
+        @Override
+        public void saveCounts(Map<Long, Long> counts) {
+            postMapper.batchSetLikeCount(counts);
+            // 详情缓存不删，读取时用最新点赞数覆盖
+            postCacheService.putCounts(PostCacheService.COUNT_LIKE, counts);
+        }
+
+        @Override
+        public void afterFlush(Collection<Long> postIds, Map<Long, Long> counts) {
+            postHotRankService.refresh(new ArrayList<>(postIds));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.common.utils.TransactionUtils;
+import com.community.communitybackend.entity.Comment;
+import com.community.communitybackend.mapper.CommentMapper;
+import com.community.communitybackend.service.PostParticipantService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 帖子最近参与者（Redis）
+ *
+ * post:participants:{postId} 存最近评论用户的 userId，逗号分隔、最近优先、最多 MAX_PARTICIPANTS 个；
+ * 没有评论的帖子存空串，避免每次都回源。
+ * 发表评论时用 Lua 脚本原子地把评论者移到最前并截断；删除评论时无法判断该用户是否还有其他评论，直接删 key，
+ * 下次读取时用窗口函数查询重新统计。列表页用一次 MGET 读取整页帖子的参与者。
+ *
+ * post:participants:ver:{postId} 是版本号，每次评论 / 删除评论时加一。回源前和参与者一起读出版本号，
+ * 回填时版本号没变才写入：回源期间有人评论（key 还不存在，前插被跳过）时放弃回填，不会把评论前的列表缓存一整天。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostParticipantServiceImpl implements PostParticipantService {
+
+    private static final String PARTICIPANTS_PREFIX = "post:participants:";
+    private static final String VERSION_PREFIX = "post:participants:ver:";
+
+    /**
+     * 回源时每个帖子取最近多少条评论来统计参与者
+     */
+    private static final int PARTICIPANT_COMMENT_LIMIT = 10;
+
+    /**
+     * 每个帖子最多保留的参与者数量
+     */
+    private static final int MAX_PARTICIPANTS = 4;
+
+    /**
+     * 缓存有效期，冷门帖子过期后自然释放内存
+     */
+    private static final Duration TTL = Duration.ofDays(1);
+
+    /**
+     * 版本号加一；key 存在时把 ARGV[1] 放到最前、去重并截断到 ARGV[2] 个，刷新过期时间；
+     * key 不存在时不处理（读取时再回源）
+     */
+    private static final DefaultRedisScript<Long> PREPEND_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[3]) " +
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if not v then return 0 end " +
+            "local ids = {ARGV[1]} " +
+            "for id in string.gmatch(v, '[^,]+') do " +
+            "  if id ~= ARGV[1] and #ids < tonumber(ARGV[2]) then table.insert(ids, id) end " +
+            "end " +
+            "redis.call('SET', KEYS[1], table.concat(ids, ','), 'EX', ARGV[3]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 删除参与者缓存并把版本号加一，正在回源的读请求不会再写回旧列表
+     */
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 回填：KEYS 依次为每个帖子的参与者 key 和版本号 key；ARGV[1] 过期秒数，之后依次为每个帖子读取时的版本号（空串表示没有）和列表
+     * 版本号没变且 key 仍不存在时才写入
+     */
+    private static final DefaultRedisScript<Long> WRITE_BACK_SCRIPT = new DefaultRedisScript<>(
+            "local written = 0 " +
+            "for i = 1, #KEYS, 2 do " +
+            "  local version = redis.call('GET', KEYS[i + 1]) or '' " +
+            "  if version == ARGV[i + 1] and redis.call('SET', KEYS[i], ARGV[i + 2], 'NX', 'EX', ARGV[1]) then " +
+            "    written = written + 1 " +
+            "  end " +
+            "end " +
+            "return written",
+            Long.class);
+
+    private final CommentMapper commentMapper;
+    private final StringRedisTemplate redisTemplate;
+
+    @Override
+    public Map<Long, List<Long>> getParticipantIds(Collection<Long> postIds) {
+        Map<Long, List<Long>> result = new HashMap<>();
+        if (postIds == null || postIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(postIds);
+        List<Long> missing = new ArrayList<>();
+        // 未命中帖子回源前的版本号
+        Map<Long, String> versions = new HashMap<>();
+        boolean redisAvailable = true;
+        try {
+            // 参与者和版本号一次 MGET 读出
+            List<String> keys = new ArrayList<>(ids.size() * 2);
+            for (Long postId : ids) {
+                keys.add(PARTICIPANTS_PREFIX + postId);
+            }
+            for (Long postId : ids) {
+                keys.add(VERSION_PREFIX + postId);
+            }
+            List<String> values = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < ids.size(); i++) {
+                String value = values != null ? values.get(i) : null;
+                if (value == null) {
+                    missing.add(ids.get(i));
+                    String version = values != null ? values.get(ids.size() + i) : null;
+                    versions.put(ids.get(i), version != null ? version : "");
+                } else {
+                    result.put(ids.get(i), parse(value));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取帖子参与者缓存失败", e);
+            missing = ids;
+            redisAvailable = false;
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Long, List<Long>> loaded = loadFromDatabase(missing);
+            result.putAll(loaded);
+            if (redisAvailable) {
+                writeBack(missing, versions, loaded);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void recordParticipant(Long postId, Long userId) {
+        afterCommit(() -> redisTemplate.execute(PREPEND_SCRIPT,
+                Arrays.asList(PARTICIPANTS_PREFIX + postId, VERSION_PREFIX + postId),
+                String.valueOf(userId), String.valueOf(MAX_PARTICIPANTS), String.valueOf(TTL.getSeconds())));
+    }
+
+    @Override
+    public void invalidate(Long postId) {
+        afterCommit(() -> redisTemplate.execute(INVALIDATE_SCRIPT,
+                Arrays.asList(PARTICIPANTS_PREFIX + postId, VERSION_PREFIX + postId),
+                String.valueOf(TTL.getSeconds())));
+    }
+
+    /**
+     * 一次窗口函数查询拿到每个帖子最近的评论者，按最近优先去重
+     */
+    private Map<Long, List<Long>> loadFromDatabase(Collection<Long> postIds) {
+        Map<Long, Set<Long>> grouped = new HashMap<>();
+        for (Comment comment : commentMapper.selectRecentByPostIds(postIds, PARTICIPANT_COMMENT_LIMIT)) {
+            Set<Long> ids = grouped.computeIfAbsent(comment.getPostId(), k -> new LinkedHashSet<>());
+            if (ids.size() < MAX_PARTICIPANTS) {
+                ids.add(comment.getUserId());
+            }
+        }
+        Map<Long, List<Long>> result = new HashMap<>();
+        grouped.forEach((postId, ids) -> result.put(postId, new ArrayList<>(ids)));
+        return result;
+    }
+
+    /**
+     * 回填缓存：版本号没变才写入（SET NX），一次脚本调用写完整页
+     */
+    private void writeBack(List<Long> postIds, Map<Long, String> versions, Map<Long, List<Long>> loaded) {
+        List<String> keys = new ArrayList<>(postIds.size() * 2);
+        List<String> args = new ArrayList<>(postIds.size() * 2 + 1);
+        args.add(String.valueOf(TTL.getSeconds()));
+        for (Long postId : postIds) {
+            keys.add(PARTICIPANTS_PREFIX + postId);
+            keys.add(VERSION_PREFIX + postId);
+            args.add(versions.getOrDefault(postId, ""));
+            args.add(join(loaded.getOrDefault(postId, Collections.emptyList())));
+        }
+        try {
+            redisTemplate.execute(WRITE_BACK_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            log.warn("回填帖子参与者缓存失败", e);
+        }
+    }
+
+    /**
+     * 在事务中调用时等提交后再写 Redis，避免回滚后缓存里留下不存在的评论者
+     */
+    private void afterCommit(Runnable action) {
+        TransactionUtils.afterCommit(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                // 参与者只是展示数据，更新失败等过期后重新统计即可
+                log.warn("更新帖子参与者缓存失败", e);
+            }
+        });
+    }
+
+    private List<Long> parse(String value) {
+        List<Long> ids = new ArrayList<>();
+        for (String id : value.split(",")) {
+            if (!id.isEmpty()) {
+                ids.add(Long.parseLong(id));
+            }
+        }
+        return ids;
+    }
+
+    private String join(List<Long> ids) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (Long id : ids) {
+            joiner.add(String.valueOf(id));
+        }
+        return joiner.toString();
+    }
+}
@@ -3,34 +3,47 @@ package com.community.communitybackend.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.common.utils.CursorUtils;
+import com.community.communitybackend.common.utils.HtmlTextUtils;
+import com.community.communitybackend.common.utils.TransactionUtils;
 import com.community.communitybackend.dto.PostDTO;
-import com.community.communitybackend.entity.Club;
-import com.community.communitybackend.entity.Comment;
 import com.community.communitybackend.entity.Post;
-import com.community.communitybackend.entity.Users;
-import com.community.communitybackend.mapper.ClubMapper;
-import com.community.communitybackend.mapper.CommentMapper;
 import com.community.communitybackend.mapper.PostMapper;
-import com.community.communitybackend.mapper.UserMapper;
+import com.community.communitybackend.service.PostCacheService;
+import com.community.communitybackend.service.PostCommentCountService;
+import com.community.communitybackend.service.PostHotRankService;
+import com.community.communitybackend.service.PostLikeService;
 import com.community.communitybackend.service.PostService;
+import com.community.communitybackend.service.PostViewCountService;
+import com.community.communitybackend.vo.CursorPageVO;
+import com.community.communitybackend.vo.PostListItemVO;
 import com.community.communitybackend.vo.PostVO;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class PostServiceImpl implements PostService {
 
+    /**
+     * 游标分页单页最大条数
+     */
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
+
     private final PostMapper postMapper;
-    private final UserMapper userMapper;
-    private final ClubMapper clubMapper;
-    private final CommentMapper commentMapper;
+    private final PostAssembler postAssembler;
+    private final PostHotRankService postHotRankService;
+    private final PostViewCountService postViewCountService;
+    private final PostCacheService postCacheService;
+    private final PostLikeService postLikeService;
+    private final PostCommentCountService postCommentCountService;
 
     @Override
     @Transactional
@@ -39,6 +52,8 @@ public class PostServiceImpl implements PostService {
         post.setUserId(userId);
         post.setTitle(dto.getTitle());
         post.setContent(dto.getContent());
+        post.setSummary(HtmlTextUtils.summarize(dto.getContent()));
+        post.setPlainText(HtmlTextUtils.toPlainText(dto.getContent()));
         post.setClubId(dto.getClubId());
         post.setTags(dto.getTags() != null ? String.join(",", dto.getTags()) : null);
         post.setImages(dto.getImages() != null ? String.join(",", dto.getImages()) : null);
@@ -52,24 +67,56 @@ public class PostServiceImpl implements PostService {
         post.setUpdatedAt(LocalDateTime.now());
 
         postMapper.insert(post);
+        // 热榜同缓存一样等提交后再改，回滚的帖子不会进热榜
+        TransactionUtils.afterCommit(() -> postHotRankService.refresh(post));
+        // 清掉可能存在的「帖子不存在」缓存
+        postCacheService.evictPostDetail(post.getId());
 
-        return convertToVO(post);
+        return postAssembler.assemble(post);
     }
 
     @Override
-    public PostVO getPostDetail(Long postId) {
-        Post post = postMapper.selectById(postId);
-        if (post == null || post.getStatus() == 0) {
-            throw new BusinessException(404, "帖子不存在");
+    public PostVO getPostDetail(Long postId, Long currentUserId) {
+        PostVO cached = postCacheService.getPostDetail(postId, this::loadPostDetail);
+
+        // 缓存中是共享实例，复制后再叠加计数：缓存加载后写回过的最新值（写回时不删缓存）、
+        // 尚未写回数据库的浏览、评论增量，以及 Redis 中的实时点赞数
+        PostVO vo = new PostVO();
+        BeanUtils.copyProperties(cached, vo);
+        Map<String, Long> counts = postCacheService.getCounts(postId);
+        long views = counts.getOrDefault(PostCacheService.COUNT_VIEW, (long) vo.getViewCount());
+        vo.setViewCount((int) (views + postViewCountService.getPendingViews(postId)));
+        long comments = counts.getOrDefault(PostCacheService.COUNT_COMMENT, (long) vo.getCommentCount());
+        long pendingComments = postCommentCountService.getPendingDeltas(Collections.singletonList(postId))
+                .getOrDefault(postId, 0L);
+        vo.setCommentCount((int) Math.max(comments + pendingComments, 0));
+        Integer likeCount = postLikeService.getLikeCount(postId);
+        if (likeCount != null) {
+            vo.setLikeCount(likeCount);
+        } else if (counts.containsKey(PostCacheService.COUNT_LIKE)) {
+            vo.setLikeCount(counts.get(PostCacheService.COUNT_LIKE).intValue());
         }
-        return convertToVO(post);
+        vo.setIsLiked(!postLikeService.getLikedPostIds(currentUserId, Collections.singletonList(postId)).isEmpty());
+        return vo;
     }
 
     @Override
-    public Page<PostVO> getPostList(String tab, Long clubId, Long userId, int page, int size) {
+    public Page<PostListItemVO> getPostList(String tab, Long clubId, Long userId, Long currentUserId, int page, int size) {
+        // 热门tab优先从热榜读取，热榜为空（如 Redis 刚清空还未重建）时退回数据库排序
+        if ("hot".equals(tab)) {
+            long total = postHotRankService.count(clubId);
+            if (total > 0) {
+                List<Long> ids = postHotRankService.getHotPostIds(clubId, (long) (page - 1) * size, size);
+                Page<PostListItemVO> voPage = new Page<>(page, size, total);
+                voPage.setRecords(postAssembler.assembleListItems(selectPostsInOrder(ids)));
+                overlayLiveFields(voPage.getRecords(), currentUserId);
+                return voPage;
+            }
+        }
+
         Page<Post> postPage = new Page<>(page, size);
 
-        LambdaQueryWrapper<Post> wrapper = new LambdaQueryWrapper<>();
+        LambdaQueryWrapper<Post> wrapper = listQueryWrapper();
         wrapper.eq(Post::getStatus, 1);
 
         // 按社团筛选
@@ -85,7 +132,7 @@ public class PostServiceImpl implements PostService {
                 wrapper.orderByDesc(Post::getCreatedAt);
                 break;
             case "hot":
-                // 按热度排序 (点赞+评论)
+                // 按点赞+评论排序（热榜不可用时的兜底）
                 wrapper.orderByDesc(Post::getLikeCount);
                 wrapper.orderByDesc(Post::getCommentCount);
                 break;
@@ -107,14 +154,91 @@ public class PostServiceImpl implements PostService {
         Page<Post> result = postMapper.selectPage(postPage, wrapper);
 
         // 转换为VO
-        Page<PostVO> voPage = new Page<>(result.getCurrent(), result.getSize(), result.getTotal());
-        voPage.setRecords(result.getRecords().stream()
-                .map(this::convertToVO)
-                .collect(Collectors.toList()));
+        Page<PostListItemVO> voPage = new Page<>(result.getCurrent(), result.getSize(), result.getTotal());
+        voPage.setRecords(postAssembler.assembleListItems(result.getRecords()));
+        overlayLiveFields(voPage.getRecords(), currentUserId);
 
         return voPage;
     }
 
+    @Override
+    public CursorPageVO<PostListItemVO> getPostListByCursor(String tab, Long clubId, Long userId, Long currentUserId,
+                                                            String cursor, int size) {
+        int limit = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+
+        if ("hot".equals(tab)) {
+            CursorPageVO<PostListItemVO> result = getHotPostListByCursor(clubId, cursor, limit);
+            overlayLiveFields(result.getRecords(), currentUserId);
+            return result;
+        }
+
+        LambdaQueryWrapper<Post> wrapper = listQueryWrapper();
+        wrapper.eq(Post::getStatus, 1);
+
+        // 按社团筛选
+        if (clubId != null) {
+            wrapper.eq(Post::getClubId, clubId);
+        }
+
+        // 每个tab的排序键都以 id 结尾保证唯一，游标就是上一页最后一条的排序键
+        // 用行比较 (a, b, id) < (x, y, z) 直接定位，不需要 OFFSET 和 COUNT
+        try {
+            switch (tab) {
+                case "new": {
+                    String[] key = CursorUtils.decode(cursor, 2);
+                    wrapper.ge(Post::getCreatedAt, LocalDateTime.now().minusHours(24));
+                    if (key != null) {
+                        wrapper.apply("(created_at, id) < ({0}, {1})",
+                                LocalDateTime.parse(key[0]), Long.parseLong(key[1]));
+                    }
+                    wrapper.orderByDesc(Post::getCreatedAt);
+                    break;
+                }
+                case "my": {
+                    String[] key = CursorUtils.decode(cursor, 2);
+                    if (userId != null) {
+                        wrapper.eq(Post::getUserId, userId);
+                    }
+                    if (key != null) {
+                        wrapper.apply("(created_at, id) < ({0}, {1})",
+                                LocalDateTime.parse(key[0]), Long.parseLong(key[1]));
+                    }
+                    wrapper.orderByDesc(Post::getCreatedAt);
+                    break;
+                }
+                case "latest":
+                default: {
+                    String[] key = CursorUtils.decode(cursor, 3);
+                    if (key != null) {
+                        wrapper.apply("(pinned, updated_at, id) < ({0}, {1}, {2})",
+                                parseBoolean(key[0]), LocalDateTime.parse(key[1]), Long.parseLong(key[2]));
+                    }
+                    wrapper.orderByDesc(Post::getPinned);
+                    wrapper.orderByDesc(Post::getUpdatedAt);
+                    break;
+                }
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new BusinessException(400, "无效的分页游标");
+        }
+        wrapper.orderByDesc(Post::getId);
+        // 多取一条用来判断是否还有下一页
+        wrapper.last("LIMIT " + (limit + 1));
+
+        List<Post> posts = postMapper.selectList(wrapper);
+        boolean hasMore = posts.size() > limit;
+        if (hasMore) {
+            posts = posts.subList(0, limit);
+        }
+
+        CursorPageVO<PostListItemVO> result = new CursorPageVO<>();
+        result.setRecords(postAssembler.assembleListItems(posts));
+        overlayLiveFields(result.getRecords(), currentUserId);
+        result.setHasMore(hasMore);
+        result.setNextCursor(hasMore ? buildCursor(tab, posts.get(posts.size() - 1)) : null);
+        return result;
+    }
+
     @Override
     @Transactional
     public PostVO updatePost(Long userId, Long postId, PostDTO dto) {
@@ -125,9 +249,12 @@ public class PostServiceImpl implements PostService {
         if (!post.getUserId().equals(userId)) {
             throw new BusinessException(403, "无权修改此帖子");
         }
+        Long oldClubId = post.getClubId();
 
         post.setTitle(dto.getTitle());
         post.setContent(dto.getContent());
+        post.setSummary(HtmlTextUtils.summarize(dto.getContent()));
+        post.setPlainText(HtmlTextUtils.toPlainText(dto.getContent()));
         post.setClubId(dto.getClubId());
         post.setTags(dto.getTags() != null ? String.join(",", dto.getTags()) : null);
         post.setImages(dto.getImages() != null ? String.join(",", dto.getImages()) : null);
@@ -135,7 +262,16 @@ public class PostServiceImpl implements PostService {
 
         postMapper.updateById(post);
 
-        return convertToVO(post);
+        TransactionUtils.afterCommit(() -> {
+            // 换了社团时先从原社团热榜移除
+            if (oldClubId != null && !oldClubId.equals(post.getClubId())) {
+                postHotRankService.remove(postId, oldClubId);
+            }
+            postHotRankService.refresh(post);
+        });
+        postCacheService.evictPostDetail(postId);
+
+        return postAssembler.assemble(post);
     }
 
     @Override
@@ -153,129 +289,138 @@ public class PostServiceImpl implements PostService {
         post.setStatus(0);
         post.setUpdatedAt(LocalDateTime.now());
         postMapper.updateById(post);
+
+        TransactionUtils.afterCommit(() -> postHotRankService.remove(postId, post.getClubId()));
+        postCacheService.evictPostDetail(postId);
     }
 
     @Override
-    public void incrementViewCount(Long postId) {
-        postMapper.incrementViewCount(postId);
+    public void incrementViewCount(Long postId, String viewerKey) {
+        // 不直接更新数据库，由 PostViewCountService 定时批量写回（写回后再刷新热榜）
+        postViewCountService.recordView(postId, viewerKey);
     }
 
     /**
-     * 将Post实体转换为PostVO
+     * 从数据库读取并组装帖子详情（缓存未命中时调用）
      */
-    private PostVO convertToVO(Post post) {
-        PostVO vo = new PostVO();
-        vo.setId(post.getId());
-        vo.setTitle(post.getTitle());
-        vo.setContent(post.getContent());
-        vo.setSummary(generateSummary(post.getContent()));
-        vo.setImages(post.getImages() != null ? Arrays.asList(post.getImages().split(",")) : new ArrayList<>());
-        vo.setTags(post.getTags() != null ? Arrays.asList(post.getTags().split(",")) : new ArrayList<>());
-        vo.setViewCount(post.getViewCount());
-        vo.setLikeCount(post.getLikeCount());
-        vo.setCommentCount(post.getCommentCount());
-        vo.setPinned(post.getPinned() != null && post.getPinned());
-        vo.setIsHot(post.getLikeCount() > 50 || post.getCommentCount() > 20);
-        vo.setCreatedAt(post.getCreatedAt());
-        vo.setUpdatedAt(post.getUpdatedAt());
-        vo.setLastActiveTime(formatTimeAgo(post.getUpdatedAt()));
-        vo.setIsAnonymous(post.getIsAnonymous());
-
-        // 获取作者信息
-        vo.setUserId(post.getUserId());
-        if (post.getIsAnonymous() != null && post.getIsAnonymous()) {
-            vo.setAuthorName("匿名用户");
-            vo.setAuthorAvatar(null);
-        } else {
-            Users user = getUserByUserId(post.getUserId());
-            if (user != null) {
-                vo.setAuthorName(user.getNickname() != null ? user.getNickname() : user.getUsername());
-                vo.setAuthorAvatar(user.getAvatar());
-            }
+    private PostVO loadPostDetail(Long postId) {
+        Post post = postMapper.selectById(postId);
+        if (post == null || post.getStatus() == 0) {
+            throw new BusinessException(404, "帖子不存在");
         }
+        return postAssembler.assemble(post);
+    }
 
-        // 获取社团信息
-        if (post.getClubId() != null) {
-            Club club = clubMapper.selectById(post.getClubId());
-            if (club != null) {
-                vo.setClubId(club.getId());
-                vo.setClubName(club.getName());
-                vo.setClubColor(club.getColor());
+    /**
+     * 叠加整页帖子的实时字段：尚未写回的评论数增量、当前用户是否点赞（未登录时全部为 false），各一次批量查询
+     */
+    private void overlayLiveFields(List<PostListItemVO> items, Long currentUserId) {
+        List<Long> postIds = new ArrayList<>(items.size());
+        for (PostListItemVO item : items) {
+            postIds.add(item.getId());
+        }
+        Map<Long, Long> pendingComments = postCommentCountService.getPendingDeltas(postIds);
+        Set<Long> liked = postLikeService.getLikedPostIds(currentUserId, postIds);
+        for (PostListItemVO item : items) {
+            Long delta = pendingComments.get(item.getId());
+            if (delta != null) {
+                item.setCommentCount((int) Math.max(item.getCommentCount() + delta, 0));
             }
+            item.setIsLiked(liked.contains(item.getId()));
         }
-
-        // 获取参与者（最近评论的用户）
-        vo.setParticipants(getParticipants(post.getId()));
-
-        return vo;
     }
 
     /**
-     * 获取帖子的参与者列表
+     * 热门tab的游标分页：游标为上一页最后一条的（热度, 帖子ID），直接在热榜上按分数定位
      */
-    private List<PostVO.ParticipantVO> getParticipants(Long postId) {
-        LambdaQueryWrapper<Comment> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(Comment::getPostId, postId);
-        wrapper.orderByDesc(Comment::getCreatedAt);
-        wrapper.last("LIMIT 10");
-
-        List<Comment> comments = commentMapper.selectList(wrapper);
-
-        // 去重并获取用户信息
-        Set<Long> userIds = new LinkedHashSet<>();
-        for (Comment comment : comments) {
-            userIds.add(comment.getUserId());
-            if (userIds.size() >= 4) break;
+    private CursorPageVO<PostListItemVO> getHotPostListByCursor(Long clubId, String cursor, int limit) {
+        String[] key = CursorUtils.decode(cursor, 2);
+        Double maxScore = null;
+        Long lastPostId = null;
+        if (key != null) {
+            try {
+                maxScore = Double.parseDouble(key[0]);
+                lastPostId = Long.parseLong(key[1]);
+            } catch (NumberFormatException e) {
+                throw new BusinessException(400, "无效的分页游标");
+            }
         }
 
-        List<PostVO.ParticipantVO> participants = new ArrayList<>();
-        for (Long uid : userIds) {
-            Users user = getUserByUserId(uid);
-            if (user != null) {
-                PostVO.ParticipantVO p = new PostVO.ParticipantVO();
-                p.setUserId(user.getUserId());
-                p.setName(user.getNickname() != null ? user.getNickname() : user.getUsername());
-                p.setAvatar(user.getAvatar());
-                participants.add(p);
-            }
+        LinkedHashMap<Long, Double> scored = postHotRankService.getHotPostIdsAfter(clubId, maxScore, lastPostId, limit + 1);
+        List<Long> ids = new ArrayList<>(scored.keySet());
+        boolean hasMore = ids.size() > limit;
+        if (hasMore) {
+            ids = ids.subList(0, limit);
         }
 
-        return participants;
+        CursorPageVO<PostListItemVO> result = new CursorPageVO<>();
+        result.setRecords(postAssembler.assembleListItems(selectPostsInOrder(ids)));
+        result.setHasMore(hasMore);
+        if (hasMore) {
+            Long lastId = ids.get(ids.size() - 1);
+            result.setNextCursor(CursorUtils.encode(scored.get(lastId), lastId));
+        }
+        return result;
     }
 
     /**
-     * 根据业务userId查询用户
+     * 列表查询只取卡片需要的列，不读取 content / plain_text 这类大字段
      */
-    private Users getUserByUserId(Long userId) {
-        if (userId == null) return null;
-        LambdaQueryWrapper<Users> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(Users::getUserId, userId);
-        return userMapper.selectOne(wrapper);
+    private LambdaQueryWrapper<Post> listQueryWrapper() {
+        LambdaQueryWrapper<Post> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Post::getId, Post::getUserId, Post::getTitle, Post::getSummary, Post::getClubId,
+                Post::getTags, Post::getIsAnonymous, Post::getViewCount, Post::getLikeCount,
+                Post::getCommentCount, Post::getStatus, Post::getPinned, Post::getCreatedAt, Post::getUpdatedAt);
+        return wrapper;
     }
 
     /**
-     * 生成摘要
+     * 按给定ID顺序批量读取帖子（一次 IN 查询），跳过已删除的帖子
      */
-    private String generateSummary(String content) {
-        if (content == null) return "";
-        // 去除HTML标签并截取前200字符
-        String text = content.replaceAll("<[^>]+>", "").replaceAll("\\s+", " ").trim();
-        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    private List<Post> selectPostsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        LambdaQueryWrapper<Post> wrapper = listQueryWrapper();
+        wrapper.in(Post::getId, ids);
+        Map<Long, Post> postMap = new HashMap<>();
+        for (Post post : postMapper.selectList(wrapper)) {
+            postMap.put(post.getId(), post);
+        }
+        List<Post> posts = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Post post = postMap.get(id);
+            if (post != null && post.getStatus() != null && post.getStatus() == 1) {
+                posts.add(post);
+            }
+        }
+        return posts;
     }
 
     /**
-     * 格式化时间为"xx前"
+     * 游标中的布尔字段只接受 true / false，其他值（如 "null"）视为无效游标
      */
-    private String formatTimeAgo(LocalDateTime time) {
-        if (time == null) return "";
-
-        Duration duration = Duration.between(time, LocalDateTime.now());
-        long minutes = duration.toMinutes();
+    private boolean parseBoolean(String value) {
+        if ("true".equals(value)) {
+            return true;
+        }
+        if ("false".equals(value)) {
+            return false;
+        }
+        throw new BusinessException(400, "无效的分页游标");
+    }
 
-        if (minutes < 1) return "刚刚";
-        if (minutes < 60) return minutes + "分钟前";
-        if (minutes < 1440) return (minutes / 60) + "小时前";
-        if (minutes < 10080) return (minutes / 1440) + "天前";
-        return (minutes / 10080) + "周前";
+    /**
+     * 用一页最后一条帖子的排序键生成下一页游标，字段顺序与 getPostListByCursor 中的行比较一致
+     */
+    private String buildCursor(String tab, Post last) {
+        switch (tab) {
+            case "new":
+            case "my":
+                return CursorUtils.encode(last.getCreatedAt(), last.getId());
+            case "latest":
+            default:
+                return CursorUtils.encode(last.getPinned(), last.getUpdatedAt(), last.getId());
+        }
     }
 }
@@ -0,0 +1,77 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.common.utils.HtmlTextUtils;
+import com.community.communitybackend.entity.Post;
+import com.community.communitybackend.mapper.PostMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 历史帖子摘要回填
+ * 摘要/纯文本列上线前发布的帖子 summary 为空，启动后按 id 分批补齐，
+ * 每批一次查询 + 一条批量 UPDATE；已有摘要的帖子不会被重复处理
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PostSummaryBackfill {
+
+    private static final int BATCH_SIZE = 200;
+
+    private final PostMapper postMapper;
+
+    @Value("${post.summary.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        try {
+            backfill();
+        } catch (Exception e) {
+            log.warn("帖子摘要回填失败", e);
+        }
+    }
+
+    /**
+     * 为所有 summary 为空的帖子生成摘要和纯文本，返回处理的帖子数
+     */
+    public int backfill() {
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            LambdaQueryWrapper<Post> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(Post::getId, Post::getContent);
+            wrapper.isNull(Post::getSummary);
+            wrapper.gt(Post::getId, lastId);
+            wrapper.orderByAsc(Post::getId);
+            wrapper.last("LIMIT " + BATCH_SIZE);
+
+            List<Post> posts = postMapper.selectList(wrapper);
+            if (posts.isEmpty()) {
+                break;
+            }
+            for (Post post : posts) {
+                post.setSummary(HtmlTextUtils.summarize(post.getContent()));
+                post.setPlainText(HtmlTextUtils.toPlainText(post.getContent()));
+                post.setContent(null);
+            }
+            postMapper.batchUpdateSummary(posts);
+            total += posts.size();
+            lastId = posts.get(posts.size() - 1).getId();
+        }
+        if (total > 0) {
+            log.info("帖子摘要回填完成, 共 {} 个帖子", total);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,351 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.entity.Post;
+import com.community.communitybackend.mapper.PostMapper;
+import com.community.communitybackend.service.PostCacheService;
+import com.community.communitybackend.service.PostHotRankService;
+import com.community.communitybackend.service.PostViewCountService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 帖子浏览量写回缓冲（write-behind）
+ *
+ * total 模式：浏览增量按线程分散到多个分段 Map 中累加，热门帖子的并发浏览不会争抢同一把锁；
+ * 定时任务把各分段的增量取出合并，用一条 UPDATE ... FROM (VALUES ...) 批量写回，
+ * 应用正常关闭时再写回一次，尽量不丢数据。
+ *
+ * unique 模式：每个帖子一个 HyperLogLog（post:uv:{postId}，最多约 12KB），PFADD 访问者标识，
+ * 估算值变化时把帖子记入待校准集合；定时 PFCOUNT，与上次已写入数据库的估算值（post:uv:synced:{postId}）之差
+ * 批量累加到 post.view_count。两个 key 每次浏览续期 unique-ttl-days，帖子这么久没人看就一起过期，
+ * 之后的浏览开始新的去重窗口，继续往 view_count 上累加，不会把已有浏览量覆盖掉。
+ */
+@Slf4j
+@Service
+public class PostViewCountServiceImpl implements PostViewCountService {
+
+    private static final int STRIPES = 16;
+
+    /**
+     * 单条 UPDATE 最多包含的帖子数
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private static final String MODE_UNIQUE = "unique";
+    private static final String UV_PREFIX = "post:uv:";
+    private static final String UV_SYNCED_PREFIX = "post:uv:synced:";
+    private static final String UV_DIRTY_KEY = "post:uv:dirty";
+
+    /**
+     * 记录访问者：KEYS[1] HyperLogLog，KEYS[2] 已同步估算值，KEYS[3] 待校准集合；ARGV[1] 访问者，ARGV[2] 过期秒数，ARGV[3] postId
+     * 没有过期时间的 HyperLogLog 是升级前写入的，当时的估算值已经覆盖到数据库，先记为已同步
+     */
+    private static final DefaultRedisScript<Long> RECORD_UV_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('TTL', KEYS[1]) == -1 then redis.call('SET', KEYS[2], redis.call('PFCOUNT', KEYS[1])) end " +
+            "local changed = redis.call('PFADD', KEYS[1], ARGV[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[2]) " +
+            "if changed == 1 then redis.call('SADD', KEYS[3], ARGV[3]) end " +
+            "return changed",
+            Long.class);
+
+    /**
+     * 每轮校准最多处理的批数，避免一次占用太久
+     */
+    private static final int RECONCILE_MAX_BATCHES = 10;
+
+    private final PostMapper postMapper;
+    private final PostHotRankService postHotRankService;
+    private final StringRedisTemplate redisTemplate;
+    private final PostCacheService postCacheService;
+
+    /**
+     * 计数模式：total（每次浏览都计数）/ unique（按访问者去重）
+     */
+    @Value("${post.view.mode:total}")
+    private String mode;
+
+    /**
+     * 去重窗口：帖子连续这么多天没有浏览，HyperLogLog 过期（unique 模式）
+     */
+    @Value("${post.view.unique-ttl-days:30}")
+    private long uniqueTtlDays;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<Long, Long>[] stripes = new ConcurrentHashMap[STRIPES];
+
+    private volatile long lastFlushMillis = System.currentTimeMillis();
+
+    private final Counter flushedCounter;
+    private final Timer flushTimer;
+    private final Counter reconciledCounter;
+
+    public PostViewCountServiceImpl(PostMapper postMapper, PostHotRankService postHotRankService,
+                                    StringRedisTemplate redisTemplate, PostCacheService postCacheService,
+                                    MeterRegistry meterRegistry) {
+        this.postMapper = postMapper;
+        this.postHotRankService = postHotRankService;
+        this.redisTemplate = redisTemplate;
+        this.postCacheService = postCacheService;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+
+        Gauge.builder("post.view.pending.views", this, PostViewCountServiceImpl::pendingViews)
+                .description("尚未写回数据库的浏览增量")
+                .register(meterRegistry);
+        Gauge.builder("post.view.pending.posts", this, PostViewCountServiceImpl::pendingPosts)
+                .description("有待写回浏览增量的帖子数")
+                .register(meterRegistry);
+        Gauge.builder("post.view.flush.lag", this, s -> (System.currentTimeMillis() - s.lastFlushMillis) / 1000.0)
+                .description("距上次成功写回的秒数")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.flushedCounter = Counter.builder("post.view.flushed")
+                .description("已写回数据库的浏览次数")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("post.view.flush")
+                .description("浏览量批量写回耗时")
+                .register(meterRegistry);
+        this.reconciledCounter = Counter.builder("post.view.reconciled")
+                .description("按 HyperLogLog 校准浏览量的帖子数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void recordView(Long postId, String viewerKey) {
+        if (MODE_UNIQUE.equals(mode)) {
+            recordUniqueView(postId, viewerKey);
+            return;
+        }
+        stripe().merge(postId, 1L, Long::sum);
+    }
+
+    @Override
+    public long getPendingViews(Long postId) {
+        long total = 0;
+        for (ConcurrentHashMap<Long, Long> stripe : stripes) {
+            Long delta = stripe.get(postId);
+            if (delta != null) {
+                total += delta;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${post.view.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        // 逐个 remove 取出增量：remove 与 merge 是原子的，取出后新的浏览会进入下一轮
+        Map<Long, Long> deltas = new HashMap<>();
+        for (ConcurrentHashMap<Long, Long> stripe : stripes) {
+            for (Long postId : stripe.keySet()) {
+                Long delta = stripe.remove(postId);
+                if (delta != null) {
+                    deltas.merge(postId, delta, Long::sum);
+                }
+            }
+        }
+        if (deltas.isEmpty()) {
+            lastFlushMillis = System.currentTimeMillis();
+            return;
+        }
+
+        flushTimer.record(() -> {
+            List<Long> postIds = new ArrayList<>(deltas.keySet());
+            for (int from = 0; from < postIds.size(); from += FLUSH_BATCH_SIZE) {
+                List<Long> batchIds = postIds.subList(from, Math.min(from + FLUSH_BATCH_SIZE, postIds.size()));
+                Map<Long, Long> batch = new LinkedHashMap<>();
+                for (Long postId : batchIds) {
+                    batch.put(postId, deltas.get(postId));
+                }
+                List<Post> updated;
+                try {
+                    updated = postMapper.batchIncrementViewCount(batch);
+                } catch (Exception e) {
+                    // 写回失败时把本批及之后未写的增量放回缓冲区，下一轮重试
+                    List<Long> unflushed = postIds.subList(from, postIds.size());
+                    log.warn("浏览量写回失败, {} 个帖子将在下一轮重试", unflushed.size(), e);
+                    for (Long postId : unflushed) {
+                        stripe().merge(postId, deltas.get(postId), Long::sum);
+                    }
+                    return;
+                }
+                // 本批已经落库，之后的步骤失败只记日志，不能再放回缓冲区
+                flushedCounter.increment(batch.values().stream().mapToLong(Long::longValue).sum());
+                recordCounts(updated);
+                refreshHotRank(batchIds);
+            }
+            lastFlushMillis = System.currentTimeMillis();
+        });
+    }
+
+    /**
+     * 去重模式：把 HyperLogLog 估算值的增长累加到 post.view_count
+     *
+     * 数据库更新失败时帖子放回待校准集合，下一轮重试；更新成功后立即写入新的已同步值，
+     * 之后的步骤失败只记日志，不会把同一段增长加两次
+     */
+    @Scheduled(fixedDelayString = "${post.view.reconcile-interval-ms:60000}")
+    public void reconcileUniqueViews() {
+        if (!MODE_UNIQUE.equals(mode)) {
+            return;
+        }
+        for (int i = 0; i < RECONCILE_MAX_BATCHES; i++) {
+            List<String> ids = redisTemplate.opsForSet().pop(UV_DIRTY_KEY, FLUSH_BATCH_SIZE);
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            Map<Long, Long> batch = new LinkedHashMap<>();
+            Map<String, String> synced = new LinkedHashMap<>();
+            List<Post> updated;
+            try {
+                // 一次管道批量 PFCOUNT + 读取已同步值
+                List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                        for (String id : ids) {
+                            ops.opsForHyperLogLog().size(UV_PREFIX + id);
+                            ops.opsForValue().get(UV_SYNCED_PREFIX + id);
+                        }
+                        return null;
+                    }
+                });
+                for (int j = 0; j < ids.size(); j++) {
+                    long count = ((Number) results.get(2 * j)).longValue();
+                    Object last = results.get(2 * j + 1);
+                    long delta = count - (last != null ? Long.parseLong(last.toString()) : 0);
+                    if (delta > 0) {
+                        batch.put(Long.parseLong(ids.get(j)), delta);
+                        synced.put(ids.get(j), String.valueOf(count));
+                    }
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                updated = postMapper.batchIncrementViewCount(batch);
+            } catch (Exception e) {
+                log.warn("浏览人数校准失败, {} 个帖子将在下一轮重试", ids.size(), e);
+                try {
+                    redisTemplate.opsForSet().add(UV_DIRTY_KEY, ids.toArray(new String[0]));
+                } catch (Exception restoreError) {
+                    log.warn("恢复浏览人数待校准集合失败", restoreError);
+                }
+                return;
+            }
+            // 增长已经落库，马上记为已同步；这里失败时下一轮会把这段增长再加一次，只能记日志
+            try {
+                writeSynced(synced);
+            } catch (Exception e) {
+                log.error("写入已同步的浏览人数失败, postIds={}", batch.keySet(), e);
+            }
+            reconciledCounter.increment(batch.size());
+            recordCounts(updated);
+            refreshHotRank(new ArrayList<>(batch.keySet()));
+        }
+    }
+
+    /**
+     * 应用关闭前把剩余的浏览增量写回数据库
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * 写入已同步的估算值，与 HyperLogLog 同样的过期时间
+     */
+    private void writeSynced(Map<String, String> synced) {
+        Duration ttl = Duration.ofDays(uniqueTtlDays);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                synced.forEach((id, value) -> ops.opsForValue().set(UV_SYNCED_PREFIX + id, value, ttl));
+                return null;
+            }
+        });
+    }
+
+    private void recordUniqueView(Long postId, String viewerKey) {
+        if (viewerKey == null) {
+            return;
+        }
+        try {
+            // PFADD 返回 1 表示估算值发生变化（大概率是新访问者），脚本才把帖子记入待校准集合；一次往返
+            redisTemplate.execute(RECORD_UV_SCRIPT,
+                    Arrays.asList(UV_PREFIX + postId, UV_SYNCED_PREFIX + postId, UV_DIRTY_KEY),
+                    viewerKey, String.valueOf(Duration.ofDays(uniqueTtlDays).getSeconds()), String.valueOf(postId));
+        } catch (Exception e) {
+            log.warn("记录浏览人数失败, postId={}", postId, e);
+        }
+    }
+
+    /**
+     * 记录写回后的浏览量，详情缓存读取时用它覆盖缓存中的值（不删缓存，热门帖子一直留在缓存里）；
+     * 增量已经落库，这里失败只记日志
+     */
+    private void recordCounts(List<Post> updated) {
+        try {
+            Map<Long, Long> counts = new HashMap<>();
+            for (Post post : updated) {
+                counts.put(post.getId(), post.getViewCount().longValue());
+            }
+            postCacheService.putCounts(PostCacheService.COUNT_VIEW, counts);
+        } catch (Exception e) {
+            log.warn("浏览量写回后记录缓存计数失败", e);
+        }
+    }
+
+    /**
+     * 浏览量变化后刷新热榜；增量已经落库，这里失败只记日志，不能再放回缓冲区
+     */
+    private void refreshHotRank(List<Long> postIds) {
+        try {
+            postHotRankService.refresh(postIds);
+        } catch (Exception e) {
+            log.warn("浏览量写回后刷新热榜失败", e);
+        }
+    }
+
+    private ConcurrentHashMap<Long, Long> stripe() {
+        return stripes[(int) (Thread.currentThread().getId() & (STRIPES - 1))];
+    }
+
+    private double pendingViews() {
+        long total = 0;
+        for (ConcurrentHashMap<Long, Long> stripe : stripes) {
+            for (Long delta : stripe.values()) {
+                total += delta;
+            }
+        }
+        return total;
+    }
+
+    private double pendingPosts() {
+        Set<Long> postIds = new HashSet<>();
+        for (ConcurrentHashMap<Long, Long> stripe : stripes) {
+            postIds.addAll(stripe.keySet());
+        }
+        return postIds.size();
+    }
+}
@@ -0,0 +1,279 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.community.communitybackend.entity.ChatRoomMember;
+import com.community.communitybackend.entity.UserProfile;
+import com.community.communitybackend.mapper.ChatRoomMemberMapper;
+import com.community.communitybackend.mapper.UserProfileMapper;
+import com.community.communitybackend.service.PresenceService;
+import com.community.communitybackend.websocket.ChatFanoutBus;
+import com.community.communitybackend.websocket.ChatFrame;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线状态（Redis Set + 节点批量续期）
+ *
+ * chat:online:{userId}  Set，成员为节点ID；最后一个节点 SREM 后 Set 自动删除
+ *
+ * 上线：SADD 本节点ID + EXPIRE；离线：SREM 本节点ID，都在 Lua 脚本里原子地判断 Set 是否由本次新建 / 删除，
+ * 只有第一个节点上线、最后一个节点离线时才通知联系人，用户在其他节点还有连接时不会误报离线。
+ * 关闭「显示在线状态」时删除整个 Set，之前在线的向联系人推送 OFFLINE。
+ * 续期任务按 refresh-interval-ms 把本节点全部在线用户分批放进管道 EXPIRE，
+ * 标记已不存在的（例如 Redis 重启）按数据库中的「显示在线状态」重新写入，关闭了的用户不会被恢复。
+ */
+@Slf4j
+@Service
+public class PresenceServiceImpl implements PresenceService {
+
+    private static final String ONLINE_PREFIX = "chat:online:";
+
+    /**
+     * 单个管道最多续期的用户数
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * KEYS[1] 在线标记；ARGV[1] 节点ID，ARGV[2] 过期秒数
+     * 返回 1 表示 Set 由本次新建（用户刚在集群中上线）
+     */
+    private static final DefaultRedisScript<Long> ONLINE_SCRIPT = new DefaultRedisScript<>(
+            "local added = redis.call('SADD', KEYS[1], ARGV[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "if added == 1 and redis.call('SCARD', KEYS[1]) == 1 then return 1 end " +
+            "return 0",
+            Long.class);
+
+    /**
+     * KEYS[1] 在线标记；ARGV[1] 节点ID
+     * 返回 1 表示移除的是最后一个节点（用户在集群中已离线）；标记已被删除（关闭在线状态、过期）时返回 0
+     */
+    private static final DefaultRedisScript<Long> OFFLINE_SCRIPT = new DefaultRedisScript<>(
+            "local removed = redis.call('SREM', KEYS[1], ARGV[1]) " +
+            "if removed == 1 and redis.call('EXISTS', KEYS[1]) == 0 then return 1 end " +
+            "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final UserProfileMapper userProfileMapper;
+    private final ChatRoomMemberMapper chatRoomMemberMapper;
+    private final ChatFanoutBus fanoutBus;
+    private final Duration ttl;
+
+    /**
+     * 本节点ID，每次启动重新生成；节点宕机后残留的ID随标记过期
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 本节点在线且公开在线状态的用户
+     */
+    private final Set<Long> localUsers = ConcurrentHashMap.newKeySet();
+
+    public PresenceServiceImpl(StringRedisTemplate redisTemplate, UserProfileMapper userProfileMapper,
+                               ChatRoomMemberMapper chatRoomMemberMapper, ChatFanoutBus fanoutBus,
+                               @Value("${chat.presence.ttl-seconds:300}") long ttlSeconds,
+                               MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.userProfileMapper = userProfileMapper;
+        this.chatRoomMemberMapper = chatRoomMemberMapper;
+        this.fanoutBus = fanoutBus;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        Gauge.builder("chat.presence.local.users", localUsers, Set::size)
+                .description("本节点公开在线状态的在线用户数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean online(Long userId) {
+        if (!isVisible(userId)) {
+            return false;
+        }
+        localUsers.add(userId);
+        try {
+            Long created = redisTemplate.execute(ONLINE_SCRIPT, Collections.singletonList(ONLINE_PREFIX + userId),
+                    nodeId, String.valueOf(ttl.getSeconds()));
+            return created != null && created == 1;
+        } catch (Exception e) {
+            // 写不进去时由下一轮续期补上；不知道是否为第一个节点，按刚上线通知（重复的 ONLINE 没有副作用）
+            log.warn("写入在线标记失败, userId={}", userId, e);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean offline(Long userId) {
+        if (!localUsers.remove(userId)) {
+            return false;
+        }
+        try {
+            Long removed = redisTemplate.execute(OFFLINE_SCRIPT, Collections.singletonList(ONLINE_PREFIX + userId), nodeId);
+            return removed != null && removed == 1;
+        } catch (Exception e) {
+            // 删不掉时标记最多在 ttl 后过期，不确定其他节点是否还有连接，不通知
+            log.warn("删除在线标记失败, userId={}", userId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void hide(Long userId) {
+        localUsers.remove(userId);
+        boolean wasOnline;
+        try {
+            // 其他节点的续期只 EXPIRE，不会把删掉的标记写回来
+            wasOnline = Boolean.TRUE.equals(redisTemplate.delete(ONLINE_PREFIX + userId));
+        } catch (Exception e) {
+            log.warn("删除在线标记失败, userId={}", userId, e);
+            return;
+        }
+        if (wasOnline) {
+            notifyOffline(userId);
+        }
+    }
+
+    /**
+     * 向用户所在聊天室的其他成员推送 OFFLINE
+     */
+    private void notifyOffline(Long userId) {
+        try {
+            LambdaQueryWrapper<ChatRoomMember> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(ChatRoomMember::getRoomId);
+            wrapper.eq(ChatRoomMember::getUserId, userId);
+            List<Long> roomIds = chatRoomMemberMapper.selectList(wrapper).stream()
+                    .map(ChatRoomMember::getRoomId)
+                    .toList();
+            fanoutBus.publish(roomIds, ChatFrame.of(ChatFrame.OFFLINE, null, userId), userId);
+        } catch (Exception e) {
+            // 联系人的在线标记最晚在下次查询在线状态时更正
+            log.warn("推送离线通知失败, userId={}", userId, e);
+        }
+    }
+
+    @Override
+    public Set<Long> getOnlineUserIds(Collection<Long> userIds) {
+        Set<Long> online = new HashSet<>();
+        if (userIds == null || userIds.isEmpty()) {
+            return online;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        try {
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (Long userId : ids) {
+                        ops.hasKey(ONLINE_PREFIX + userId);
+                    }
+                    return null;
+                }
+            });
+            for (int i = 0; i < ids.size(); i++) {
+                if (Boolean.TRUE.equals(results.get(i))) {
+                    online.add(ids.get(i));
+                }
+            }
+        } catch (Exception e) {
+            // 在线状态只是展示用，查不到时都显示离线
+            log.warn("批量查询在线状态失败", e);
+        }
+        return online;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${chat.presence.refresh-interval-ms:180000}")
+    public void refresh() {
+        List<Long> users = new ArrayList<>(localUsers);
+        List<Long> missing = new ArrayList<>();
+        for (int from = 0; from < users.size(); from += BATCH_SIZE) {
+            List<Long> batch = users.subList(from, Math.min(from + BATCH_SIZE, users.size()));
+            try {
+                List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                        for (Long userId : batch) {
+                            ops.expire(ONLINE_PREFIX + userId, ttl);
+                        }
+                        return null;
+                    }
+                });
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!Boolean.TRUE.equals(results.get(i))) {
+                        missing.add(batch.get(i));
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("续期在线标记失败，将在下一轮重试", e);
+                return;
+            }
+        }
+        if (!missing.isEmpty()) {
+            restore(missing);
+        }
+    }
+
+    /**
+     * 标记丢失的用户：仍公开在线状态的重新写入，已关闭的从本节点移除
+     */
+    private void restore(List<Long> userIds) {
+        Set<Long> hidden = getHiddenUserIds(userIds);
+        List<Long> visible = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (hidden.contains(userId)) {
+                localUsers.remove(userId);
+            } else if (localUsers.contains(userId)) {
+                visible.add(userId);
+            }
+        }
+        if (visible.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long userId : visible) {
+                    ops.opsForSet().add(ONLINE_PREFIX + userId, nodeId);
+                    ops.expire(ONLINE_PREFIX + userId, ttl);
+                }
+                return null;
+            }
+        });
+        log.info("恢复 {} 个用户的在线标记", visible.size());
+    }
+
+    private boolean isVisible(Long userId) {
+        return !getHiddenUserIds(Collections.singletonList(userId)).contains(userId);
+    }
+
+    /**
+     * 关闭了「显示在线状态」的用户（没有资料记录的按默认公开处理）
+     */
+    private Set<Long> getHiddenUserIds(Collection<Long> userIds) {
+        LambdaQueryWrapper<UserProfile> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(UserProfile::getUserId);
+        wrapper.in(UserProfile::getUserId, userIds);
+        wrapper.eq(UserProfile::getShowOnline, false);
+        Set<Long> hidden = new HashSet<>();
+        for (UserProfile profile : userProfileMapper.selectList(wrapper)) {
+            hidden.add(profile.getUserId());
+        }
+        return hidden;
+    }
+}
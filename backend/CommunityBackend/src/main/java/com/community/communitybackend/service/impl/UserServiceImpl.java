@@ -3,6 +3,7 @@ package com.community.communitybackend.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.community.communitybackend.common.exception.BusinessException;
 import com.community.communitybackend.common.utils.JwtUtils;
+import com.community.communitybackend.common.utils.TransactionUtils;
 import com.community.communitybackend.dto.LoginDTO;
 import com.community.communitybackend.dto.RegisterDTO;
 import com.community.communitybackend.dto.UserProfileDTO;
@@ -10,6 +11,7 @@ import com.community.communitybackend.entity.UserProfile;
 import com.community.communitybackend.entity.Users;
 import com.community.communitybackend.mapper.UserMapper;
 import com.community.communitybackend.mapper.UserProfileMapper;
+import com.community.communitybackend.service.PresenceService;
 import com.community.communitybackend.service.UserService;
 import com.community.communitybackend.vo.LoginVO;
 import com.community.communitybackend.vo.UserProfileVO;
@@ -21,6 +23,10 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -32,6 +38,7 @@ public class UserServiceImpl implements UserService {
     private final JwtUtils jwtUtils;
     private final PasswordEncoder passwordEncoder;
     private final StringRedisTemplate redisTemplate;
+    private final PresenceService presenceService;
 
     private static final String TOKEN_PREFIX = "user:token:";
     private static final long TOKEN_EXPIRE_DAYS = 7;
@@ -127,6 +134,21 @@ public class UserServiceImpl implements UserService {
         return userMapper.selectOne(wrapper);
     }
 
+    @Override
+    public Map<Long, Users> getUsersByUserIds(Collection<Long> userIds) {
+        Map<Long, Users> userMap = new HashMap<>();
+        if (userIds == null || userIds.isEmpty()) {
+            return userMap;
+        }
+        LambdaQueryWrapper<Users> wrapper = new LambdaQueryWrapper<>();
+        wrapper.in(Users::getUserId, userIds);
+        List<Users> users = userMapper.selectList(wrapper);
+        for (Users user : users) {
+            userMap.put(user.getUserId(), user);
+        }
+        return userMap;
+    }
+
     private LoginVO buildLoginVO(Users user, String token) {
         LoginVO vo = new LoginVO();
         vo.setUserId(user.getUserId());
@@ -252,6 +274,10 @@ public class UserServiceImpl implements UserService {
         }
         if (dto.getShowOnline() != null) {
             profile.setShowOnline(dto.getShowOnline());
+            if (!dto.getShowOnline()) {
+                // 关闭后立即从在线列表中消失；重新打开在下次建立聊天连接时生效
+                TransactionUtils.afterCommit(() -> presenceService.hide(userId));
+            }
         }
         if (dto.getAllowMessage() != null) {
             profile.setAllowMessage(dto.getAllowMessage());
@@ -18,8 +18,27 @@ public class ChatRoomVO {
      */
     private String roomType;
 
+    /**
+     * 私信对方的用户ID（频道为空）
+     */
+    private Long peerUserId;
+
+    /**
+     * 私信对方是否在线（频道为空；对方关闭了「显示在线状态」时始终为 false）
+     */
+    private Boolean online;
+
+    private Long lastMessageId;
+
+    /**
+     * 最后一条消息预览（截断后的内容）
+     */
     private String lastMessage;
 
+    private Long lastSenderId;
+
+    private String lastSenderName;
+
     private LocalDateTime lastMessageTime;
 
     private String lastMessageTimeText;
@@ -41,4 +41,14 @@ public class CommentVO {
      * 回复目标用户名（当parentId > 0时）
      */
     private String replyToName;
+
+    /**
+     * 是否还有未加载的回复（分页接口中使用）
+     */
+    private Boolean hasMoreReplies;
+
+    /**
+     * 加载后续回复的游标，传给 /api/post/comments/{commentId}/replies
+     */
+    private String repliesCursor;
 }
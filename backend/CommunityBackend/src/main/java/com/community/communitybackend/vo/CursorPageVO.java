@@ -0,0 +1,22 @@
+package com.community.communitybackend.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * 不返回总数（省掉 COUNT 查询），前端用 nextCursor 请求下一页
+ */
+@Data
+public class CursorPageVO<T> {
+
+    private List<T> records;
+
+    /**
+     * 下一页游标，没有更多数据时为 null
+     */
+    private String nextCursor;
+
+    private Boolean hasMore;
+}
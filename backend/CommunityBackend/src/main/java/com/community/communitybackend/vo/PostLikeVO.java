@@ -0,0 +1,22 @@
+package com.community.communitybackend.vo;
+
+import lombok.Data;
+
+/**
+ * 点赞/取消点赞结果
+ */
+@Data
+public class PostLikeVO {
+
+    private Long postId;
+
+    /**
+     * 当前用户是否已点赞
+     */
+    private Boolean liked;
+
+    /**
+     * 最新点赞数
+     */
+    private Integer likeCount;
+}
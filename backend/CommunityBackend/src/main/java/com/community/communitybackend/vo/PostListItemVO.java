@@ -0,0 +1,50 @@
+package com.community.communitybackend.vo;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 帖子列表卡片
+ * 只包含列表页展示需要的字段，不含正文和图片，完整内容通过 /api/post/{id} 获取
+ */
+@Data
+public class PostListItemVO {
+
+    private Long id;
+
+    private String title;
+
+    private String summary;
+
+    private List<String> tags;
+
+    // 社团信息
+    private Long clubId;
+    private String clubName;
+    private String clubColor;
+
+    // 作者信息
+    private Long userId;
+    private String authorName;
+    private String authorAvatar;
+    private Boolean isAnonymous;
+
+    // 统计信息
+    private Integer viewCount;
+    private Integer likeCount;
+    private Integer commentCount;
+
+    // 状态
+    private Boolean pinned;
+    private Boolean isHot;
+    private Boolean isLiked;
+
+    // 参与者列表
+    private List<PostVO.ParticipantVO> participants;
+
+    // 时间
+    private LocalDateTime createdAt;
+    private String lastActiveTime;
+}
@@ -39,6 +39,7 @@ public class PostVO {
     // 状态
     private Boolean pinned;
     private Boolean isHot;
+    private Boolean isLiked;
 
     // 参与者列表
     private List<ParticipantVO> participants;
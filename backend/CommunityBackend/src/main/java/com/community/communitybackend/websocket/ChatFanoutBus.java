@@ -0,0 +1,158 @@
+package com.community.communitybackend.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 跨节点聊天推送（Redis 发布/订阅）
+ *
+ * 多个后端实例时，发送者和接收者可能连在不同节点上。每条推送按聊天室ID分片发布到 chat:fanout:{roomId % SHARDS}，
+ * 每个节点订阅全部分片，收到后只投递给本节点连着的会话（ChatSessionRegistry 的聊天室索引），没有本地成员时直接丢弃。
+ * 发布者自己也会收到自己的消息，本节点的会话和其他节点走同一条路径，不会重复推送。
+ *
+ * 同一分片的消息由同一个投递线程按到达顺序处理，同一聊天室的消息不会乱序；
+ * 监听容器的回调线程只负责解析和分发，投递线程也只是把帧放进各会话的发送队列（ChatOutboundSession），都不会被慢连接阻塞。
+ */
+@Slf4j
+@Component
+public class ChatFanoutBus implements MessageListener {
+
+    private static final String CHANNEL_PREFIX = "chat:fanout:";
+
+    static final int SHARDS = 16;
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ChatSessionRegistry sessionRegistry;
+    private final JsonMapper jsonMapper;
+
+    private final ExecutorService[] dispatchers = new ExecutorService[SHARDS];
+
+    public ChatFanoutBus(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+                         ChatSessionRegistry sessionRegistry, JsonMapper jsonMapper) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.sessionRegistry = sessionRegistry;
+        this.jsonMapper = jsonMapper;
+        for (int i = 0; i < SHARDS; i++) {
+            String name = "chat-fanout-" + i;
+            dispatchers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        List<Topic> topics = new ArrayList<>(SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            topics.add(new ChannelTopic(CHANNEL_PREFIX + i));
+        }
+        listenerContainer.addMessageListener(this, topics);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * 把一帧推送给聊天室的全部在线成员（所有节点）
+     */
+    public void publish(Long roomId, ChatFrame frame) {
+        publish(List.of(roomId), frame, null);
+    }
+
+    /**
+     * 把一帧推送给多个聊天室的在线成员，同时在多个聊天室中的会话只收到一次
+     * @param excludeUserId 不推送给该用户，为空表示不排除
+     */
+    public void publish(Collection<Long> roomIds, ChatFrame frame, Long excludeUserId) {
+        if (roomIds.isEmpty()) {
+            return;
+        }
+        Envelope envelope = new Envelope();
+        envelope.setRoomIds(new ArrayList<>(roomIds));
+        envelope.setExcludeUserId(excludeUserId);
+        envelope.setFrame(jsonMapper.writeValueAsString(frame));
+        envelope.setCoalesceKey(frame.coalesceKey());
+        envelope.setResyncRoomId(frame.resyncRoomId());
+        int shard = shard(envelope.getRoomIds().get(0));
+        try {
+            redisTemplate.convertAndSend(CHANNEL_PREFIX + shard, jsonMapper.writeValueAsString(envelope));
+        } catch (Exception e) {
+            // Redis 不可用时至少推送给本节点的成员，其他节点的成员重连后从历史消息补齐
+            log.warn("发布聊天推送失败，只投递本节点, roomIds={}", roomIds, e);
+            dispatch(shard, envelope);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Envelope envelope = jsonMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), Envelope.class);
+            if (envelope.getRoomIds() == null || envelope.getRoomIds().isEmpty()) {
+                return;
+            }
+            dispatch(shard(envelope.getRoomIds().get(0)), envelope);
+        } catch (Exception e) {
+            log.warn("解析聊天推送失败", e);
+        }
+    }
+
+    private void dispatch(int shard, Envelope envelope) {
+        TextMessage text = new TextMessage(envelope.getFrame());
+        dispatchers[shard].execute(() ->
+                sessionRegistry.sendToRooms(envelope.getRoomIds(), text, envelope.getCoalesceKey(),
+                        envelope.getResyncRoomId(), envelope.getExcludeUserId()));
+    }
+
+    private int shard(Long roomId) {
+        return (int) Math.floorMod(roomId, (long) SHARDS);
+    }
+
+    /**
+     * 发布到 Redis 的消息体；frame 为已经序列化好的推送内容，各节点原样发给客户端，不用重复序列化
+     */
+    @Data
+    public static class Envelope {
+
+        private List<Long> roomIds;
+
+        private Long excludeUserId;
+
+        private String frame;
+
+        /**
+         * 发送队列合并用的 key，见 ChatFrame.coalesceKey
+         */
+        private String coalesceKey;
+
+        /**
+         * 被发送队列丢弃时补发 RESYNC 的聊天室，见 ChatFrame.resyncRoomId
+         */
+        private Long resyncRoomId;
+    }
+}
@@ -0,0 +1,99 @@
+package com.community.communitybackend.websocket;
+
+import com.community.communitybackend.vo.ChatMessageVO;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * WebSocket 聊天帧（客户端与服务端共用同一结构，JSON 文本帧）
+ *
+ * 客户端 -> 服务端：CHAT（发送消息，需要 roomId、content）/ READ（已读回执，需要 roomId，messageId 为空表示读到最新）
+ * 服务端 -> 客户端：CHAT / READ / ONLINE / OFFLINE，请求不合法时回复 ERROR；
+ *   RESYNC 表示该聊天室有消息因发送队列满被丢弃，客户端应按本地最后一条消息ID用 after 补拉
+ * 心跳：客户端每 3 分钟发一次 PING（不需要 roomId），服务端回复 PONG，连接不会因空闲被断开
+ */
+@Data
+public class ChatFrame {
+
+    public static final String CHAT = "CHAT";
+    public static final String READ = "READ";
+    public static final String ONLINE = "ONLINE";
+    public static final String OFFLINE = "OFFLINE";
+    public static final String ERROR = "ERROR";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+    public static final String RESYNC = "RESYNC";
+
+    private String type;
+
+    private Long roomId;
+
+    /**
+     * 消息ID（CHAT 推送时有值，客户端据此去重和补拉；READ 为已读到的消息ID）
+     */
+    private Long messageId;
+
+    private Long senderId;
+
+    private String senderName;
+
+    private String senderAvatar;
+
+    private String content;
+
+    /**
+     * TEXT / IMAGE / FILE / SYSTEM
+     */
+    private String msgType;
+
+    private LocalDateTime createdAt;
+
+    public static ChatFrame chat(ChatMessageVO message) {
+        ChatFrame frame = new ChatFrame();
+        frame.setType(CHAT);
+        frame.setRoomId(message.getRoomId());
+        frame.setMessageId(message.getId());
+        frame.setSenderId(message.getSenderId());
+        frame.setSenderName(message.getSenderName());
+        frame.setSenderAvatar(message.getSenderAvatar());
+        frame.setContent(message.getContent());
+        frame.setMsgType("TEXT");
+        frame.setCreatedAt(message.getCreatedAt());
+        return frame;
+    }
+
+    public static ChatFrame of(String type, Long roomId, Long senderId) {
+        ChatFrame frame = new ChatFrame();
+        frame.setType(type);
+        frame.setRoomId(roomId);
+        frame.setSenderId(senderId);
+        return frame;
+    }
+
+    /**
+     * 发送队列合并用的 key：同一 key 的帧只有最新一条有意义（已读回执、上下线状态），消息本身不能合并，返回 null
+     */
+    public String coalesceKey() {
+        if (READ.equals(type)) {
+            return READ + ":" + roomId + ":" + senderId;
+        }
+        if (ONLINE.equals(type) || OFFLINE.equals(type)) {
+            return "PRESENCE:" + senderId;
+        }
+        return null;
+    }
+
+    /**
+     * 发送队列满被丢弃时需要补发 RESYNC 的聊天室：只有消息本身需要，已读回执、上下线丢了不影响数据，返回 null
+     */
+    public Long resyncRoomId() {
+        return CHAT.equals(type) ? roomId : null;
+    }
+
+    public static ChatFrame error(Long roomId, String message) {
+        ChatFrame frame = of(ERROR, roomId, null);
+        frame.setContent(message);
+        return frame;
+    }
+}
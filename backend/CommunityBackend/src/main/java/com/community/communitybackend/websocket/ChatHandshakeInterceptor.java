@@ -0,0 +1,65 @@
+package com.community.communitybackend.websocket;
+
+import com.community.communitybackend.common.utils.JwtUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * WebSocket 握手拦截器
+ * 浏览器建立 WebSocket 连接时不能自定义请求头，Token 通过 /ws/chat?token=xxx 传入；
+ * 校验规则与 JwtAuthenticationFilter 相同（签名有效且 Redis 中存在，登出后立即失效），通过后把 userId 存入会话属性
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String USER_ID_ATTR = "userId";
+
+    private static final String TOKEN_PREFIX = "user:token:";
+
+    private final JwtUtils jwtUtils;
+    private final StringRedisTemplate redisTemplate;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = resolveToken(request);
+        if (StringUtils.hasText(token) && jwtUtils.validateToken(token)
+                && Boolean.TRUE.equals(redisTemplate.hasKey(TOKEN_PREFIX + token))) {
+            attributes.put(USER_ID_ATTR, jwtUtils.getUserIdFromToken(token));
+            return true;
+        }
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    /**
+     * 优先取查询参数 token，非浏览器客户端也可以用 Authorization: Bearer xxx
+     */
+    private String resolveToken(ServerHttpRequest request) {
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+        if (StringUtils.hasText(token)) {
+            return token;
+        }
+        String bearerToken = request.getHeaders().getFirst("Authorization");
+        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+            return bearerToken.substring(7);
+        }
+        return null;
+    }
+}
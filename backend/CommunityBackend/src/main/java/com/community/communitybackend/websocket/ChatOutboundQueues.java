@@ -0,0 +1,196 @@
+package com.community.communitybackend.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.Session;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天会话发送队列的创建、发送线程池和监控指标
+ *
+ * chat.ws.outbound.queued          本节点所有会话排队中的帧数
+ * chat.ws.outbound.max.depth       本节点最长的一个会话队列
+ * chat.ws.outbound.dropped         因队列满丢弃的帧数（drop-oldest / coalesce）
+ * chat.ws.outbound.resync          因丢弃消息而通知客户端补拉的次数
+ * chat.ws.outbound.coalesced       被同 key 新帧替换掉的帧数（coalesce）
+ * chat.ws.outbound.disconnected    因队列满或发送超时断开的连接数
+ */
+@Slf4j
+@Component
+public class ChatOutboundQueues {
+
+    /**
+     * Tomcat 阻塞发送的超时时间（会话属性），默认 20 秒；关闭握手等少量阻塞写仍然用到
+     */
+    private static final String TOMCAT_BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    public enum Policy {
+        DROP_OLDEST, COALESCE, DISCONNECT;
+
+        static Policy of(String value) {
+            return Policy.valueOf(value.trim().replace('-', '_').toUpperCase());
+        }
+    }
+
+    @Getter
+    private final int capacity;
+
+    @Getter
+    private final Policy policy;
+
+    @Getter
+    private final long sendTimeLimitMs;
+
+    private final ExecutorService sender;
+
+    private final Set<ChatOutboundSession> sessions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong queued = new AtomicLong();
+
+    private final JsonMapper jsonMapper;
+
+    private final Counter dropped;
+    private final Counter coalesced;
+    private final Counter resync;
+    private final Counter disconnected;
+
+    public ChatOutboundQueues(@Value("${chat.ws.outbound.capacity:256}") int capacity,
+                              @Value("${chat.ws.outbound.policy:drop-oldest}") String policy,
+                              @Value("${chat.ws.outbound.send-threads:4}") int sendThreads,
+                              @Value("${chat.ws.outbound.send-time-limit-ms:2000}") long sendTimeLimitMs,
+                              MeterRegistry meterRegistry, JsonMapper jsonMapper) {
+        this.capacity = capacity;
+        this.policy = Policy.of(policy);
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.jsonMapper = jsonMapper;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread thread = new Thread(r, "chat-ws-send-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("chat.ws.outbound.queued", queued, AtomicLong::get)
+                .description("本节点所有会话排队中的推送帧数")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.max.depth", this, ChatOutboundQueues::maxDepth)
+                .description("本节点最长的会话发送队列")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.ws.outbound.dropped")
+                .description("发送队列满时丢弃的推送帧数")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("chat.ws.outbound.coalesced")
+                .description("被同类新帧替换掉的推送帧数")
+                .register(meterRegistry);
+        this.resync = Counter.builder("chat.ws.outbound.resync")
+                .description("丢弃消息后通知客户端补拉的次数")
+                .register(meterRegistry);
+        this.disconnected = Counter.builder("chat.ws.outbound.disconnected")
+                .description("因发送队列满或发送超时断开的连接数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdown();
+    }
+
+    /**
+     * 为新连接创建发送队列
+     */
+    public ChatOutboundSession open(WebSocketSession session) {
+        // 推送走 Tomcat 的异步发送，发送线程发起写入后立即返回，慢连接不会占着发送线程；
+        // 异步写和少量阻塞写（关闭握手）都以发送时限为超时
+        RemoteEndpoint.Async async = null;
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            Session standard = nativeSession.getNativeSession(Session.class);
+            if (standard != null) {
+                standard.getUserProperties().put(TOMCAT_BLOCKING_SEND_TIMEOUT, sendTimeLimitMs);
+                async = standard.getAsyncRemote();
+                async.setSendTimeout(sendTimeLimitMs);
+            }
+        }
+        ChatOutboundSession outbound = new ChatOutboundSession(session, async, this);
+        sessions.add(outbound);
+        return outbound;
+    }
+
+    /**
+     * 连接关闭：丢弃还没发出的帧
+     */
+    public void release(ChatOutboundSession outbound) {
+        outbound.release();
+        sessions.remove(outbound);
+    }
+
+    void schedule(ChatOutboundSession outbound) {
+        try {
+            sender.execute(outbound::drain);
+        } catch (RejectedExecutionException e) {
+            // 应用正在关闭
+            outbound.release();
+        }
+    }
+
+    /**
+     * 在发送线程上断开连接，关闭握手可能阻塞，不能放在推送线程上
+     */
+    void closeAsync(ChatOutboundSession outbound, String reason) {
+        release(outbound);
+        disconnected.increment();
+        log.info("断开慢连接: {}, sessionId={}", reason, outbound.getId());
+        try {
+            sender.execute(() -> outbound.closeQuietly(CloseStatus.SESSION_NOT_RELIABLE));
+        } catch (RejectedExecutionException e) {
+            // 应用正在关闭，连接会随容器一起关闭
+        }
+    }
+
+    void recordQueued(int delta) {
+        queued.addAndGet(delta);
+    }
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    /**
+     * 通知客户端补拉该聊天室的帧
+     */
+    TextMessage resyncFrame(Long roomId) {
+        resync.increment();
+        return new TextMessage(jsonMapper.writeValueAsString(ChatFrame.of(ChatFrame.RESYNC, roomId, null)));
+    }
+
+    private double maxDepth() {
+        int max = 0;
+        for (ChatOutboundSession outbound : sessions) {
+            max = Math.max(max, outbound.depth());
+        }
+        return max;
+    }
+}
@@ -0,0 +1,269 @@
+package com.community.communitybackend.websocket;
+
+import jakarta.websocket.RemoteEndpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 带有界发送队列的会话
+ *
+ * 推送线程调用 sendMessage 只是入队，立即返回；实际发送由 ChatOutboundQueues 的发送线程池发起，
+ * 同一会话同一时刻只有一帧在发送，保证顺序（WebSocketSession.sendMessage 和 Tomcat 异步发送都不允许并发调用）。
+ * 有原生会话时用 Tomcat 异步发送：发送线程发起写入后立即返回，写完的回调再安排下一帧，
+ * 慢连接只占着自己的队列，不占发送线程；没有原生会话时（测试等）退回阻塞发送。
+ * 队列满时按策略处理，慢客户端最多占用 capacity 条消息的内存，也不会拖住推送线程：
+ * drop-oldest  丢弃最早的一条
+ * coalesce     同一 coalesceKey 的帧（已读回执、上下线）用最新一条替换队列中的旧帧；仍然满时丢弃最早的一条
+ * disconnect   清空队列并断开连接，客户端重连后从历史消息补齐
+ * 丢弃的是聊天消息时，在队列前面补一帧该聊天室的 RESYNC（每个聊天室最多一帧），客户端收到后补拉，消息不会悄悄丢失。
+ * 单次发送超过 sendTimeLimit 时，无论哪种策略都断开连接。
+ */
+@Slf4j
+public class ChatOutboundSession extends WebSocketSessionDecorator {
+
+    /**
+     * 每个发送任务最多连续发送的条数，发完还有剩余时重新排队，避免一个繁忙的会话长期占着发送线程
+     */
+    private static final int DRAIN_BATCH = 64;
+
+    private final ChatOutboundQueues queues;
+
+    /**
+     * Tomcat 异步发送端，为空时阻塞发送
+     */
+    private final RemoteEndpoint.Async async;
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+    /**
+     * 有消息被丢弃、等待发送 RESYNC 的聊天室（受 queue 锁保护，先于队列中的帧发送）
+     */
+    private final Set<Long> resyncRooms = new LinkedHashSet<>();
+
+    /**
+     * 是否已有发送任务在处理该会话（受 queue 锁保护）
+     */
+    private boolean draining;
+
+    private boolean closed;
+
+    /**
+     * 当前这次发送的开始时间，0 表示没有在发送
+     */
+    private volatile long sendStartedAt;
+
+    ChatOutboundSession(WebSocketSession delegate, RemoteEndpoint.Async async, ChatOutboundQueues queues) {
+        super(delegate);
+        this.async = async;
+        this.queues = queues;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        enqueue((TextMessage) message, null, null);
+    }
+
+    public void enqueue(TextMessage message, String coalesceKey) {
+        enqueue(message, coalesceKey, null);
+    }
+
+    /**
+     * 入队一帧
+     * @param coalesceKey 合并 key，为空表示不可合并
+     * @param resyncRoomId 被丢弃时需要补发 RESYNC 的聊天室，为空表示不需要
+     */
+    public void enqueue(TextMessage message, String coalesceKey, Long resyncRoomId) {
+        if (stuck()) {
+            queues.closeAsync(this, "发送超时");
+            return;
+        }
+        boolean overflow = false;
+        boolean schedule = false;
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            if (queues.getPolicy() == ChatOutboundQueues.Policy.COALESCE && coalesceKey != null
+                    && replace(coalesceKey, message)) {
+                queues.recordCoalesced();
+                return;
+            }
+            if (queue.size() >= queues.getCapacity()) {
+                if (queues.getPolicy() == ChatOutboundQueues.Policy.DISCONNECT) {
+                    overflow = true;
+                } else {
+                    Entry dropped = queue.pollFirst();
+                    queues.recordQueued(-1);
+                    queues.recordDropped();
+                    if (dropped.resyncRoomId != null) {
+                        resyncRooms.add(dropped.resyncRoomId);
+                    }
+                }
+            }
+            if (!overflow) {
+                queue.addLast(new Entry(message, coalesceKey, resyncRoomId));
+                queues.recordQueued(1);
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (overflow) {
+            queues.closeAsync(this, "发送队列已满");
+        } else if (schedule) {
+            queues.schedule(this);
+        }
+    }
+
+    /**
+     * 由发送线程调用：按顺序发送队列中的帧
+     */
+    void drain() {
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            TextMessage message = next();
+            if (message == null) {
+                return;
+            }
+            if (!isOpen()) {
+                release();
+                return;
+            }
+            if (async != null) {
+                // 写完的回调再安排下一帧
+                sendAsync(message);
+                return;
+            }
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(message);
+            } catch (Exception e) {
+                // 发送失败（已断开、底层发送超时）时关闭连接，剩下的帧不再发送
+                log.debug("WebSocket 推送失败, sessionId={}", getId(), e);
+                release();
+                closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+                return;
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+        // 还有剩余，让出线程，重新排队
+        queues.schedule(this);
+    }
+
+    /**
+     * 取出下一帧：先发待补拉的 RESYNC，再按顺序发队列中的帧；都没有时结束本轮发送
+     */
+    private TextMessage next() {
+        synchronized (queue) {
+            Iterator<Long> resync = resyncRooms.iterator();
+            if (resync.hasNext()) {
+                Long roomId = resync.next();
+                resync.remove();
+                return queues.resyncFrame(roomId);
+            }
+            Entry entry = queue.pollFirst();
+            if (entry == null) {
+                draining = false;
+                return null;
+            }
+            queues.recordQueued(-1);
+            return entry.message;
+        }
+    }
+
+    private void sendAsync(TextMessage message) {
+        sendStartedAt = System.currentTimeMillis();
+        try {
+            async.sendText(message.getPayload(), result -> {
+                sendStartedAt = 0;
+                if (result.isOK()) {
+                    queues.schedule(this);
+                } else {
+                    // 发送失败或超过发送时限，回调在容器的 IO 线程上，关闭交给发送线程
+                    log.debug("WebSocket 推送失败, sessionId={}", getId(), result.getException());
+                    queues.closeAsync(this, "发送失败");
+                }
+            });
+        } catch (Exception e) {
+            sendStartedAt = 0;
+            log.debug("WebSocket 推送失败, sessionId={}", getId(), e);
+            queues.closeAsync(this, "发送失败");
+        }
+    }
+
+    /**
+     * 当前排队的帧数
+     */
+    int depth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * 清空队列并不再接受新帧（连接关闭时调用）
+     */
+    void release() {
+        synchronized (queue) {
+            if (!queue.isEmpty()) {
+                queues.recordQueued(-queue.size());
+                queue.clear();
+            }
+            resyncRooms.clear();
+            closed = true;
+            draining = false;
+        }
+    }
+
+    void closeQuietly(CloseStatus status) {
+        try {
+            getDelegate().close(status);
+        } catch (IOException e) {
+            log.debug("关闭 WebSocket 会话失败, sessionId={}", getId(), e);
+        }
+    }
+
+    private boolean stuck() {
+        long started = sendStartedAt;
+        return started > 0 && System.currentTimeMillis() - started > queues.getSendTimeLimitMs();
+    }
+
+    /**
+     * 用新帧替换队列中同一 key 的旧帧，位置不变
+     */
+    private boolean replace(String coalesceKey, TextMessage message) {
+        for (Entry entry : queue) {
+            if (coalesceKey.equals(entry.coalesceKey)) {
+                entry.message = message;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+
+        private TextMessage message;
+
+        private final String coalesceKey;
+
+        private final Long resyncRoomId;
+
+        Entry(TextMessage message, String coalesceKey, Long resyncRoomId) {
+            this.message = message;
+            this.coalesceKey = coalesceKey;
+            this.resyncRoomId = resyncRoomId;
+        }
+    }
+}
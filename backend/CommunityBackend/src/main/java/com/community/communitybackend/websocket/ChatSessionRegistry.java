@@ -0,0 +1,155 @@
+package com.community.communitybackend.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本节点的 WebSocket 会话表
+ *
+ * 按用户索引（userId -> 会话）用于判断用户在本节点的上线/离线，
+ * 按聊天室索引（roomId -> 会话）用于投递：收到某个聊天室的消息时直接取出本节点连着的成员会话，不需要查成员表。
+ * 会话所属的聊天室在连接建立时确定，之后加入的聊天室重连后生效。
+ * 同一用户可以同时打开多个连接（多个标签页、手机和电脑），每个连接都会收到推送。
+ */
+@Slf4j
+@Component
+public class ChatSessionRegistry {
+
+    private final ConcurrentHashMap<Long, Set<WebSocketSession>> sessionsByUser = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Long, Set<WebSocketSession>> sessionsByRoom = new ConcurrentHashMap<>();
+
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    public ChatSessionRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("chat.ws.sessions", sessionCount, AtomicInteger::get)
+                .description("本节点的 WebSocket 会话数")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.users", sessionsByUser, ConcurrentHashMap::size)
+                .description("本节点在线的用户数")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.rooms", sessionsByRoom, ConcurrentHashMap::size)
+                .description("本节点有在线成员的聊天室数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 登记会话
+     * @param roomIds 该用户所在的聊天室
+     * @return 是否为该用户在本节点的第一个会话（用户刚上线）
+     */
+    public boolean register(Long userId, Collection<Long> roomIds, WebSocketSession session) {
+        boolean first = add(sessionsByUser, userId, session);
+        for (Long roomId : roomIds) {
+            add(sessionsByRoom, roomId, session);
+        }
+        sessionCount.incrementAndGet();
+        return first;
+    }
+
+    /**
+     * 移除会话
+     * @return 是否为该用户在本节点的最后一个会话（用户已离线）
+     */
+    public boolean unregister(Long userId, Collection<Long> roomIds, WebSocketSession session) {
+        for (Long roomId : roomIds) {
+            remove(sessionsByRoom, roomId, session);
+        }
+        boolean[] removed = {false};
+        boolean last = remove(sessionsByUser, userId, session, removed);
+        if (removed[0]) {
+            sessionCount.decrementAndGet();
+        }
+        return last;
+    }
+
+    /**
+     * 推送给这些聊天室在本节点的全部会话，同时属于多个聊天室的会话只推送一次
+     * @param coalesceKey 发送队列合并用的 key（ChatFrame.coalesceKey），为空表示不可合并
+     * @param resyncRoomId 被发送队列丢弃时补发 RESYNC 的聊天室（ChatFrame.resyncRoomId），为空表示不需要
+     * @param excludeUserId 不推送给该用户（上下线通知不发给自己），为空表示不排除
+     */
+    public void sendToRooms(Collection<Long> roomIds, TextMessage message, String coalesceKey, Long resyncRoomId,
+                            Long excludeUserId) {
+        Set<WebSocketSession> targets = new HashSet<>();
+        for (Long roomId : roomIds) {
+            Set<WebSocketSession> sessions = sessionsByRoom.get(roomId);
+            if (sessions != null) {
+                targets.addAll(sessions);
+            }
+        }
+        for (WebSocketSession session : targets) {
+            if (excludeUserId == null || !excludeUserId.equals(session.getAttributes().get(ChatHandshakeInterceptor.USER_ID_ATTR))) {
+                send(session, message, coalesceKey, resyncRoomId);
+            }
+        }
+    }
+
+    public void send(WebSocketSession session, TextMessage message) {
+        send(session, message, null, null);
+    }
+
+    private void send(WebSocketSession session, TextMessage message, String coalesceKey, Long resyncRoomId) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            if (session instanceof ChatOutboundSession outbound) {
+                // 只是入队，不会阻塞推送线程
+                outbound.enqueue(message, coalesceKey, resyncRoomId);
+            } else {
+                session.sendMessage(message);
+            }
+        } catch (Exception e) {
+            // 单个连接发送失败（已断开、发送超时）不影响其他成员
+            log.debug("WebSocket 推送失败, sessionId={}", session.getId(), e);
+        }
+    }
+
+    /**
+     * @return 是否新建了该 key 的会话集合
+     */
+    private boolean add(ConcurrentHashMap<Long, Set<WebSocketSession>> index, Long key, WebSocketSession session) {
+        boolean[] created = {false};
+        index.compute(key, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                created[0] = true;
+            }
+            sessions.add(session);
+            return sessions;
+        });
+        return created[0];
+    }
+
+    private boolean remove(ConcurrentHashMap<Long, Set<WebSocketSession>> index, Long key, WebSocketSession session) {
+        return remove(index, key, session, new boolean[1]);
+    }
+
+    /**
+     * @return 移除后该 key 的会话集合是否已空（空集合同时从索引中删除）
+     */
+    private boolean remove(ConcurrentHashMap<Long, Set<WebSocketSession>> index, Long key, WebSocketSession session,
+                           boolean[] removed) {
+        boolean[] emptied = {false};
+        index.computeIfPresent(key, (k, sessions) -> {
+            removed[0] = sessions.remove(session);
+            if (sessions.isEmpty()) {
+                emptied[0] = true;
+                return null;
+            }
+            return sessions;
+        });
+        return emptied[0];
+    }
+}
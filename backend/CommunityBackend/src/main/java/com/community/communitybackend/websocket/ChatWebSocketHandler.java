@@ -0,0 +1,156 @@
+package com.community.communitybackend.websocket;
+
+import com.community.communitybackend.common.exception.BusinessException;
+import com.community.communitybackend.service.ChatService;
+import com.community.communitybackend.service.PresenceService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聊天 WebSocket 处理器（/ws/chat）
+ *
+ * CHAT：交给 ChatService.sendMessage，持久化后由它推送给聊天室的全部在线成员，包括发送者自己的其他连接，
+ *       发送者据此拿到消息ID；
+ * READ：交给 ChatService.markRead，由它向聊天室成员推送已读回执；
+ * PING：心跳，回复 PONG；在线标记由 PresenceService 按节点批量续期，心跳不访问 Redis；
+ * 用户在本节点的第一个连接建立 / 最后一个连接断开时更新在线状态；只有在集群中第一次上线 / 最后一个节点离线时
+ * （PresenceService 返回 true）才向同聊天室的联系人推送 ONLINE / OFFLINE（关闭了「显示在线状态」的用户不推送）。
+ * 推送都经过 ChatFanoutBus，连在其他节点上的成员也能收到。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    private static final String ROOM_IDS_ATTR = "roomIds";
+
+    private final ChatService chatService;
+    private final ChatSessionRegistry sessionRegistry;
+    private final ChatFanoutBus fanoutBus;
+    private final ChatOutboundQueues outboundQueues;
+    private final PresenceService presenceService;
+    private final JsonMapper jsonMapper;
+
+    /**
+     * 原始会话 -> 带发送队列的包装（推送只入队，由发送线程按顺序发出）
+     */
+    private final Map<String, ChatOutboundSession> decorated = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        Long userId = userId(session);
+        List<Long> roomIds = chatService.getUserRoomIds(userId);
+        session.getAttributes().put(ROOM_IDS_ATTR, roomIds);
+        ChatOutboundSession safe = outboundQueues.open(session);
+        decorated.put(session.getId(), safe);
+        if (sessionRegistry.register(userId, roomIds, safe) && presenceService.online(userId)) {
+            notifyContacts(userId, roomIds, ChatFrame.ONLINE);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Long userId = userId(session);
+        WebSocketSession safe = decorated.get(session.getId());
+        if (safe == null) {
+            safe = session;
+        }
+        ChatFrame frame;
+        try {
+            frame = jsonMapper.readValue(message.getPayload(), ChatFrame.class);
+        } catch (Exception e) {
+            reply(safe, ChatFrame.error(null, "消息格式错误"));
+            return;
+        }
+        if (ChatFrame.PING.equals(frame.getType())) {
+            reply(safe, ChatFrame.of(ChatFrame.PONG, null, null));
+            return;
+        }
+        if (frame.getType() == null || frame.getRoomId() == null) {
+            reply(safe, ChatFrame.error(frame.getRoomId(), "缺少 type 或 roomId"));
+            return;
+        }
+
+        try {
+            switch (frame.getType()) {
+                case ChatFrame.CHAT -> handleChat(userId, frame);
+                case ChatFrame.READ -> handleRead(userId, frame);
+                default -> reply(safe, ChatFrame.error(frame.getRoomId(), "不支持的消息类型: " + frame.getType()));
+            }
+        } catch (BusinessException e) {
+            reply(safe, ChatFrame.error(frame.getRoomId(), e.getMessage()));
+        } catch (Exception e) {
+            log.error("处理聊天消息失败, userId={}, roomId={}", userId, frame.getRoomId(), e);
+            reply(safe, ChatFrame.error(frame.getRoomId(), "服务器内部错误"));
+        }
+    }
+
+    private void handleChat(Long userId, ChatFrame frame) {
+        String content = frame.getContent();
+        if (content == null || content.trim().isEmpty()) {
+            throw new BusinessException(400, "消息内容不能为空");
+        }
+        // 成员校验和推送都在 ChatService 中完成，和 REST 发送走同一条路径
+        chatService.sendMessage(userId, frame.getRoomId(), content);
+    }
+
+    private void handleRead(Long userId, ChatFrame frame) {
+        chatService.markRead(userId, frame.getRoomId(), frame.getMessageId());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("WebSocket 传输错误, sessionId={}", session.getId(), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Long userId = userId(session);
+        List<Long> roomIds = roomIds(session);
+        ChatOutboundSession safe = decorated.remove(session.getId());
+        if (safe == null) {
+            return;
+        }
+        outboundQueues.release(safe);
+        if (sessionRegistry.unregister(userId, roomIds, safe) && presenceService.offline(userId)) {
+            notifyContacts(userId, roomIds, ChatFrame.OFFLINE);
+        }
+    }
+
+    /**
+     * 向用户所在聊天室的其他成员推送上线/离线通知
+     */
+    private void notifyContacts(Long userId, List<Long> roomIds, String type) {
+        try {
+            fanoutBus.publish(roomIds, ChatFrame.of(type, null, userId), userId);
+        } catch (Exception e) {
+            // 上下线通知只影响联系人的在线标记，失败不影响连接本身
+            log.warn("推送{}通知失败, userId={}", type, userId, e);
+        }
+    }
+
+    private void reply(WebSocketSession session, ChatFrame frame) {
+        sessionRegistry.send(session, new TextMessage(jsonMapper.writeValueAsString(frame)));
+    }
+
+    private Long userId(WebSocketSession session) {
+        return (Long) session.getAttributes().get(ChatHandshakeInterceptor.USER_ID_ATTR);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> roomIds(WebSocketSession session) {
+        List<Long> roomIds = (List<Long>) session.getAttributes().get(ROOM_IDS_ATTR);
+        return roomIds != null ? roomIds : Collections.emptyList();
+    }
+}
@@ -181,6 +181,8 @@ CREATE TABLE post (
     user_id       BIGINT NOT NULL REFERENCES users(user_id),  -- 发帖人（外键关联users表）
     title         VARCHAR(200),                      -- 帖子标题
     content       TEXT NOT NULL,                     -- 帖子正文（TEXT类型不限长度）
+    summary       VARCHAR(300),                      -- 摘要：正文纯文本前200字符，发帖/编辑时生成，列表页直接读取
+    plain_text    TEXT,                              -- 正文纯文本（去掉HTML标签），用于搜索
     images        TEXT,                              -- 图片URL列表，用逗号分隔
     club_id       BIGINT REFERENCES club(id),        -- 所属社团ID
     tags          VARCHAR(500),                      -- 标签，用逗号分隔
@@ -189,9 +191,9 @@ CREATE TABLE post (
     like_count    INT DEFAULT 0,                     -- 点赞数（冗余字段，方便按热度排序，不用每次COUNT查询）
     comment_count INT DEFAULT 0,                     -- 评论数（同上，冗余字段提升查询性能）
     status        SMALLINT DEFAULT 1,                -- 状态：1正常 0已删除(软删除) 2审核中
-    pinned        BOOLEAN DEFAULT FALSE,             -- 是否置顶
-    created_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    pinned        BOOLEAN NOT NULL DEFAULT FALSE,    -- 是否置顶
+    created_at    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
 -- 帖子表索引：按「谁的帖子」「哪个社团」「发布时间倒序」查询非常频繁，所以加索引
@@ -208,6 +210,7 @@ CREATE TABLE comment (
     post_id     BIGINT NOT NULL REFERENCES post(id),     -- 属于哪个帖子
     user_id     BIGINT NOT NULL REFERENCES users(user_id),-- 评论者
     parent_id   BIGINT DEFAULT 0,                        -- 父评论ID，0=顶级评论，其他值=回复某条评论
+    root_id     BIGINT DEFAULT 0,                        -- 所属顶级评论ID，0=自己就是顶级评论；楼中楼回复也指向顶级评论
     content     TEXT NOT NULL,                            -- 评论内容
     like_count  INT DEFAULT 0,                           -- 评论点赞数
     status      SMALLINT DEFAULT 1,                      -- 1正常 0已删除
@@ -237,6 +240,10 @@ CREATE TABLE chat_room (
     room_type   VARCHAR(20) NOT NULL,                -- PRIVATE(私聊) / GROUP(群聊)
     owner_id    BIGINT,                              -- 群主用户ID（私聊时为空）
     avatar      VARCHAR(500),                        -- 群头像URL（私聊时为空）
+    last_message_id      BIGINT,                     -- 最后一条消息ID
+    last_message_preview VARCHAR(400),               -- 最后一条消息预览（前 100 个字符）
+    last_sender_id       BIGINT,                     -- 最后一条消息的发送者
+    last_message_at      TIMESTAMP,                  -- 最后一条消息时间，会话列表按它排序
     created_at  TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at  TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
@@ -249,6 +256,7 @@ CREATE TABLE chat_room_member (
     user_id     BIGINT NOT NULL REFERENCES users(user_id), -- 哪个用户
     role        VARCHAR(20) DEFAULT 'MEMBER',              -- 成员角色：OWNER(群主) / ADMIN(管理员) / MEMBER(普通成员)
     joined_at   TIMESTAMP DEFAULT CURRENT_TIMESTAMP,       -- 加入时间
+    last_read_message_id BIGINT DEFAULT 0,                 -- 已读到的消息ID，0 表示还没有读过
     UNIQUE(room_id, user_id)                               -- 同一个人不能重复加入同一个聊天室
 );
 
@@ -401,3 +409,149 @@ COMMENT ON COLUMN user_profile.show_online IS '显示在线状态';
 COMMENT ON COLUMN user_profile.allow_message IS '允许私信';
 COMMENT ON COLUMN user_profile.dark_mode IS '深色模式';
 COMMENT ON COLUMN user_profile.compact_mode IS '紧凑模式';
+
+
+-- ============================================
+-- 帖子列表游标分页索引（升级脚本）
+-- /api/post/list/cursor 用 WHERE (排序键) < (上一页最后一条的排序键) 定位下一页，
+-- 下面的复合索引与各 tab 的 ORDER BY 完全一致，翻到多深都只扫描一页的数据
+-- 只对 status = 1 的正常帖子建「部分索引」，已删除的帖子不占索引空间
+-- 排序键不能为 NULL：行比较遇到 NULL 结果为 NULL，这些帖子会从后续页中消失
+-- ============================================
+
+UPDATE post SET pinned = FALSE WHERE pinned IS NULL;
+UPDATE post SET created_at = CURRENT_TIMESTAMP WHERE created_at IS NULL;
+UPDATE post SET updated_at = created_at WHERE updated_at IS NULL;
+ALTER TABLE post ALTER COLUMN pinned SET NOT NULL;
+ALTER TABLE post ALTER COLUMN created_at SET NOT NULL;
+ALTER TABLE post ALTER COLUMN updated_at SET NOT NULL;
+
+-- latest：置顶优先，再按更新时间
+CREATE INDEX IF NOT EXISTS idx_post_feed_latest ON post(pinned DESC, updated_at DESC, id DESC) WHERE status = 1;
+CREATE INDEX IF NOT EXISTS idx_post_feed_club_latest ON post(club_id, pinned DESC, updated_at DESC, id DESC) WHERE status = 1;
+
+-- new / my：按发布时间
+CREATE INDEX IF NOT EXISTS idx_post_feed_new ON post(created_at DESC, id DESC) WHERE status = 1;
+CREATE INDEX IF NOT EXISTS idx_post_feed_club_new ON post(club_id, created_at DESC, id DESC) WHERE status = 1;
+CREATE INDEX IF NOT EXISTS idx_post_feed_user_new ON post(user_id, created_at DESC, id DESC) WHERE status = 1;
+
+-- hot：按点赞数、评论数
+CREATE INDEX IF NOT EXISTS idx_post_feed_hot ON post(like_count DESC, comment_count DESC, id DESC) WHERE status = 1;
+CREATE INDEX IF NOT EXISTS idx_post_feed_club_hot ON post(club_id, like_count DESC, comment_count DESC, id DESC) WHERE status = 1;
+
+
+-- ============================================
+-- 帖子摘要 / 纯文本列（升级脚本）
+-- 摘要在发帖/编辑时生成并保存，列表查询不再读取 content
+-- 已有数据由应用启动时的回填任务补齐（post.summary.backfill-on-startup）
+-- ============================================
+ALTER TABLE post ADD COLUMN IF NOT EXISTS summary VARCHAR(300);
+ALTER TABLE post ADD COLUMN IF NOT EXISTS plain_text TEXT;
+
+
+-- ============================================
+-- 评论分页（升级脚本）
+-- 顶级评论按 (post_id, parent_id = 0, created_at, id) 游标分页，
+-- 某条评论下的回复按 (root_id, created_at, id) 游标分页，单次请求读取的行数与帖子评论总数无关
+-- ============================================
+ALTER TABLE comment ADD COLUMN IF NOT EXISTS root_id BIGINT DEFAULT 0;
+
+-- 回填历史回复的 root_id：从顶级评论沿 parent_id 向下递归
+WITH RECURSIVE tree AS (
+    SELECT id, id AS root_id FROM comment WHERE parent_id = 0 OR parent_id IS NULL
+    UNION ALL
+    SELECT c.id, t.root_id FROM comment c JOIN tree t ON c.parent_id = t.id
+)
+UPDATE comment c SET root_id = t.root_id
+FROM tree t
+WHERE c.id = t.id AND c.parent_id <> 0 AND c.root_id = 0;
+
+CREATE INDEX IF NOT EXISTS idx_comment_post_parent_time ON comment(post_id, parent_id, created_at, id) WHERE status = 1;
+CREATE INDEX IF NOT EXISTS idx_comment_root_time ON comment(root_id, created_at, id) WHERE status = 1;
+
+
+-- ============================================
+-- 评论点赞表（升级脚本）
+-- 点赞状态先存 Redis（comment:like:{commentId}），后台任务批量同步到这张表和 comment.like_count
+-- UNIQUE(comment_id, user_id) 保证同一个人对同一条评论只能点赞一次，写回时 ON CONFLICT DO NOTHING 保证幂等
+-- ============================================
+CREATE TABLE IF NOT EXISTS comment_like (
+    id          BIGSERIAL PRIMARY KEY,
+    comment_id  BIGINT NOT NULL REFERENCES comment(id),   -- 哪条评论
+    user_id     BIGINT NOT NULL REFERENCES users(user_id), -- 谁点的赞
+    created_at  TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE(comment_id, user_id)
+);
+
+-- 批量查询「当前用户点赞过本页哪些评论」
+CREATE INDEX IF NOT EXISTS idx_comment_like_user ON comment_like(user_id, comment_id);
+
+
+-- ============================================
+-- 聊天记录游标分页（升级脚本）
+-- 历史消息按 (room_id, created_at, id) 游标分页：before=<消息ID> 向上翻，after=<消息ID> 补拉新消息，
+-- 不再使用 OFFSET，翻到多早的记录都只读取一页的行数
+-- ============================================
+CREATE INDEX IF NOT EXISTS idx_message_room_time ON chat_message(room_id, created_at, id);
+
+-- room_id 是新索引的前缀，单列索引不再需要
+DROP INDEX IF EXISTS idx_message_room_id;
+
+
+-- ============================================
+-- 会话列表最后一条消息快照（升级脚本）
+-- 发送消息时在同一事务里更新 chat_room 上的最后一条消息（ID、预览、发送者、时间），
+-- 会话列表一条 SQL 读出并按最后活跃时间排序，不再逐个聊天室查最后一条消息
+-- ============================================
+ALTER TABLE chat_room ADD COLUMN IF NOT EXISTS last_message_id BIGINT;
+ALTER TABLE chat_room ADD COLUMN IF NOT EXISTS last_message_preview VARCHAR(400);
+ALTER TABLE chat_room ADD COLUMN IF NOT EXISTS last_sender_id BIGINT;
+ALTER TABLE chat_room ADD COLUMN IF NOT EXISTS last_message_at TIMESTAMP;
+
+-- 回填已有聊天室的最后一条消息
+UPDATE chat_room r
+SET last_message_id = m.id,
+    last_message_preview = LEFT(m.content, 100),
+    last_sender_id = m.sender_id,
+    last_message_at = m.created_at
+FROM (
+    SELECT DISTINCT ON (room_id) id, room_id, sender_id, content, created_at
+    FROM chat_message
+    ORDER BY room_id, created_at DESC, id DESC
+) m
+WHERE r.id = m.room_id AND r.last_message_id IS NULL;
+
+COMMENT ON COLUMN chat_room.last_message_id IS '最后一条消息ID';
+COMMENT ON COLUMN chat_room.last_message_preview IS '最后一条消息预览（前 100 个字符）';
+COMMENT ON COLUMN chat_room.last_sender_id IS '最后一条消息的发送者';
+COMMENT ON COLUMN chat_room.last_message_at IS '最后一条消息时间，会话列表按它排序';
+
+
+-- ============================================
+-- 聊天未读数（升级脚本）
+-- 每个成员的已读位置记在 last_read_message_id（只前进不后退），
+-- 未读数存在 Redis Hash chat:unread:{userId}（字段 roomId），发送时 +1、已读时清零；
+-- Hash 未加载时才按已读位置从数据库统计一次
+-- ============================================
+ALTER TABLE chat_room_member ADD COLUMN IF NOT EXISTS last_read_message_id BIGINT DEFAULT 0;
+
+-- 升级前的历史消息视为已读，避免上线后所有会话都显示大量未读
+UPDATE chat_room_member m
+SET last_read_message_id = r.last_message_id
+FROM chat_room r
+WHERE m.room_id = r.id AND r.last_message_id IS NOT NULL AND COALESCE(m.last_read_message_id, 0) = 0;
+
+COMMENT ON COLUMN chat_room_member.last_read_message_id IS '已读到的消息ID，0 表示还没有读过';
+
+
+-- ============================================
+-- 评论数写回批次（升级脚本）
+-- 评论数延迟写回时，每批先从 Redis 的 processing 移到 inflight，再在同一事务里记录批次号并累加 post.comment_count；
+-- 写回中途失败或进程退出后，按批次号是否存在判断这批是否已经写入，决定丢弃还是放回 processing，不会重复累加
+-- ============================================
+CREATE TABLE IF NOT EXISTS post_comment_count_batch (
+    token       VARCHAR(64) PRIMARY KEY,             -- 批次号（UUID）
+    created_at  TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE post_comment_count_batch IS '已写入数据库的评论数写回批次，Redis 中的 inflight 清理后删除';
@@ -0,0 +1,193 @@
+package com.community.communitybackend.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.community.communitybackend.entity.ChatMessage;
+import com.community.communitybackend.mapper.ChatMessageMapper;
+import com.community.communitybackend.mapper.ChatRoomMapper;
+import com.community.communitybackend.mapper.ChatRoomMemberMapper;
+import com.community.communitybackend.service.ChatUnreadService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 聊天消息写入压测：direct（每条消息一个事务）与 group（组提交）的每秒写入条数对比
+ *
+ * 需要一个已执行 init.sql 的 PostgreSQL；默认不运行，传入连接地址时才执行：
+ *   mvn test -Dtest=ChatMessageWriterBenchmark \
+ *       -Dchat.bench.url=jdbc:postgresql://localhost:5432/community -Dchat.bench.user=postgres -Dchat.bench.password=xxx
+ * 可选：-Dchat.bench.threads=64（并发发送线程）-Dchat.bench.messages=20000（每种模式的消息数）-Dchat.bench.rooms=20
+ * 再传 -Dchat.bench.redis.host=localhost（-Dchat.bench.redis.port=6379）时用真实的 ChatUnreadServiceImpl 更新未读数，
+ * 否则未读数更新为空操作，只测写库。
+ *
+ * 压测会新建 rooms 个聊天室，结束后连同消息一起删除。
+ */
+@EnabledIfSystemProperty(named = "chat.bench.url", matches = ".+")
+class ChatMessageWriterBenchmark {
+
+    private static HikariDataSource dataSource;
+    private static JdbcTemplate jdbc;
+    private static SqlSessionTemplate sqlSession;
+    private static LettuceConnectionFactory redisFactory;
+    private static ChatUnreadService unreadService;
+    private static final List<Long> roomIds = new ArrayList<>();
+    private static long senderId;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        int threads = Integer.getInteger("chat.bench.threads", 64);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("chat.bench.url"));
+        dataSource.setUsername(System.getProperty("chat.bench.user", "postgres"));
+        dataSource.setPassword(System.getProperty("chat.bench.password", ""));
+        dataSource.setMaximumPoolSize(Math.min(threads, 50));
+        jdbc = new JdbcTemplate(dataSource);
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        sqlSessionFactory.getConfiguration().addMapper(ChatMessageMapper.class);
+        sqlSessionFactory.getConfiguration().addMapper(ChatRoomMapper.class);
+        sqlSessionFactory.getConfiguration().addMapper(ChatRoomMemberMapper.class);
+        sqlSession = new SqlSessionTemplate(sqlSessionFactory);
+
+        String redisHost = System.getProperty("chat.bench.redis.host");
+        if (redisHost != null && !redisHost.isEmpty()) {
+            redisFactory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(redisHost, Integer.getInteger("chat.bench.redis.port", 6379)));
+            redisFactory.afterPropertiesSet();
+            redisFactory.start();
+            unreadService = new ChatUnreadServiceImpl(sqlSession.getMapper(ChatRoomMapper.class),
+                    sqlSession.getMapper(ChatRoomMemberMapper.class), new StringRedisTemplate(redisFactory));
+        } else {
+            unreadService = new NoopUnreadService();
+        }
+
+        senderId = jdbc.queryForObject("SELECT MIN(user_id) FROM users", Long.class);
+        int rooms = Integer.getInteger("chat.bench.rooms", 20);
+        for (int i = 0; i < rooms; i++) {
+            roomIds.add(jdbc.queryForObject(
+                    "INSERT INTO chat_room (room_name, room_type) VALUES ('bench-' || ?, 'channel') RETURNING id",
+                    Long.class, i));
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (jdbc != null && !roomIds.isEmpty()) {
+            String ids = roomIds.toString().replace('[', '(').replace(']', ')');
+            jdbc.update("DELETE FROM chat_message WHERE room_id IN " + ids);
+            jdbc.update("DELETE FROM chat_room WHERE id IN " + ids);
+        }
+        if (redisFactory != null) {
+            redisFactory.destroy();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    void compareDirectAndGroupCommit() throws Exception {
+        int threads = Integer.getInteger("chat.bench.threads", 64);
+        int messages = Integer.getInteger("chat.bench.messages", 20_000);
+
+        // 先各跑一小轮预热（JIT、连接池、语句缓存）
+        run("direct", threads, 1000);
+        run("group", threads, 1000);
+
+        double direct = run("direct", threads, messages);
+        double group = run("group", threads, messages);
+        System.out.printf("direct: %.0f 条/秒, group: %.0f 条/秒, 提升 %.1f 倍 (%d 线程, %d 个聊天室, 未读数: %s)%n",
+                direct, group, group / direct, threads, roomIds.size(),
+                redisFactory != null ? "ChatUnreadServiceImpl" : "不更新");
+    }
+
+    /**
+     * @return 每秒写入条数
+     */
+    private double run(String mode, int threads, int messages) throws Exception {
+        ChatMessageWriterImpl writer = new ChatMessageWriterImpl(
+                sqlSession.getMapper(ChatMessageMapper.class), sqlSession.getMapper(ChatRoomMapper.class),
+                unreadService, new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                mode, 2, 500, 10_000, new SimpleMeterRegistry());
+        writer.start();
+        long before = countMessages();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int i = thread; i < messages; i += threads) {
+                    ChatMessage message = new ChatMessage();
+                    message.setRoomId(roomIds.get(i % roomIds.size()));
+                    message.setSenderId(senderId);
+                    message.setContent("bench message " + i);
+                    message.setMsgType("TEXT");
+                    message.setStatus(1);
+                    writer.write(message);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        writer.stop();
+
+        assertEquals(messages, countMessages() - before);
+        return messages / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private long countMessages() {
+        String ids = roomIds.toString().replace('[', '(').replace(']', ')');
+        return jdbc.queryForObject("SELECT COUNT(*) FROM chat_message WHERE room_id IN " + ids, Long.class);
+    }
+
+    private static class NoopUnreadService implements ChatUnreadService {
+
+        @Override
+        public void recordMessages(Collection<ChatMessage> messages) {
+        }
+
+        @Override
+        public Long markRead(Long userId, Long roomId, Long messageId) {
+            return null;
+        }
+
+        @Override
+        public Map<Long, Integer> getUnreadCounts(Long userId, Collection<Long> roomIds) {
+            return Collections.emptyMap();
+        }
+    }
+}
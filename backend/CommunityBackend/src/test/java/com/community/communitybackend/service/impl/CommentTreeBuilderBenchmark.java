@@ -0,0 +1,41 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.entity.Comment;
+import com.community.communitybackend.entity.Users;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 评论树构建耗时：大帖子（默认 2000 条评论、多层楼中楼），线性实现构建一次只需几毫秒，
+ * 明显变慢说明退化成了平方复杂度
+ *
+ * 耗时受机器负载影响，不作为单元测试断言；默认不运行，需要时手动执行：
+ *   mvn test -Dtest=CommentTreeBuilderBenchmark -Dcomment.bench=true
+ * 可选：-Dcomment.bench.comments=2000（评论数）-Dcomment.bench.rounds=50（计时轮数）
+ */
+@EnabledIfSystemProperty(named = "comment.bench", matches = "true")
+class CommentTreeBuilderBenchmark {
+
+    @Test
+    void buildLargeThread() {
+        int count = Integer.getInteger("comment.bench.comments", CommentTreeBuilderTest.COMMENT_COUNT);
+        int rounds = Integer.getInteger("comment.bench.rounds", 50);
+        List<Comment> comments = CommentTreeBuilderTest.syntheticThread(count, 42);
+        Map<Long, Users> userMap = CommentTreeBuilderTest.users();
+
+        // 预热
+        for (int i = 0; i < 20; i++) {
+            CommentTreeBuilder.build(comments, userMap, 1L);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            CommentTreeBuilder.build(comments, userMap, 1L);
+        }
+        long avgMicros = (System.nanoTime() - start) / rounds / 1000;
+        System.out.printf("CommentTreeBuilder: %d 条评论，平均每次构建 %d 微秒%n", count, avgMicros);
+    }
+}
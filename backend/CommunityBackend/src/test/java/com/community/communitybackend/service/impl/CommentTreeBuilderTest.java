@@ -0,0 +1,94 @@
+package com.community.communitybackend.service.impl;
+
+import com.community.communitybackend.entity.Comment;
+import com.community.communitybackend.entity.Users;
+import com.community.communitybackend.vo.CommentVO;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 评论树构建：多层楼中楼拍平到顶级评论下，大帖子的评论一条不丢
+ * 构建耗时见 CommentTreeBuilderBenchmark
+ */
+class CommentTreeBuilderTest {
+
+    static final int COMMENT_COUNT = 2000;
+    private static final int USER_COUNT = 300;
+
+    @Test
+    void placesEveryCommentOfLargeThread() {
+        List<Comment> comments = syntheticThread(COMMENT_COUNT, 42);
+
+        List<CommentVO> tree = CommentTreeBuilder.build(comments, users(), 1L);
+
+        int total = 0;
+        for (CommentVO top : tree) {
+            total += 1 + top.getReplies().size();
+        }
+        assertEquals(COMMENT_COUNT, total);
+    }
+
+    @Test
+    void flattensNestedRepliesUnderRoot() {
+        Map<Long, Users> userMap = users();
+        List<Comment> comments = List.of(
+                comment(1, 0, 1),
+                comment(2, 1, 2),
+                comment(3, 2, 3),
+                comment(4, 3, 1),
+                comment(5, 0, 2),
+                comment(6, 99, 3)); // 父评论已删除
+
+        List<CommentVO> tree = CommentTreeBuilder.build(comments, userMap, 1L);
+
+        assertEquals(2, tree.size());
+        CommentVO root = tree.get(0);
+        assertEquals(List.of(2L, 3L, 4L), root.getReplies().stream().map(CommentVO::getId).toList());
+        assertEquals("user1", root.getReplies().get(0).getReplyToName());
+        assertEquals("user2", root.getReplies().get(1).getReplyToName());
+        assertEquals("user3", root.getReplies().get(2).getReplyToName());
+        assertTrue(root.getIsOwner());
+        assertTrue(tree.get(1).getReplies().isEmpty());
+    }
+
+    /**
+     * 生成评论：约 10% 为顶级评论，其余随机回复任意一条更早的评论
+     */
+    static List<Comment> syntheticThread(int count, long seed) {
+        Random random = new Random(seed);
+        List<Comment> comments = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            long parentId = (i == 1 || random.nextInt(10) == 0) ? 0 : 1 + random.nextInt(i - 1);
+            comments.add(comment(i, parentId, 1 + random.nextInt(USER_COUNT)));
+        }
+        return comments;
+    }
+
+    private static Comment comment(long id, long parentId, long userId) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setPostId(1L);
+        comment.setUserId(userId);
+        comment.setParentId(parentId);
+        comment.setContent("comment " + id);
+        comment.setLikeCount(0);
+        comment.setStatus(1);
+        comment.setCreatedAt(LocalDateTime.now().minusMinutes(COMMENT_COUNT - id));
+        return comment;
+    }
+
+    static Map<Long, Users> users() {
+        Map<Long, Users> userMap = new HashMap<>();
+        for (long i = 1; i <= USER_COUNT; i++) {
+            Users user = new Users();
+            user.setUserId(i);
+            user.setUsername("user" + i);
+            userMap.put(i, user);
+        }
+        return userMap;
+    }
+}
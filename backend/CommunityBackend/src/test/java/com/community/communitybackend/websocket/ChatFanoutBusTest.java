@@ -0,0 +1,161 @@
+package com.community.communitybackend.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 跨节点推送：两个 ChatFanoutBus + ChatSessionRegistry 模拟两个后端节点，共用一个 Redis
+ *
+ * 从 A 节点发布，B 节点连着该聊天室的会话按发布顺序收到全部帧，B 节点不在该聊天室的会话收不到；
+ * A 节点自己的会话也经 Redis 收到且只收到一次。
+ * 需要一个可用的 Redis；默认不运行，传入 Redis 地址时才执行：
+ *   mvn test -DskipTests=false -Dtest=ChatFanoutBusTest -Dchat.redis.host=localhost -Dchat.redis.port=6379
+ */
+@EnabledIfSystemProperty(named = "chat.redis.host", matches = ".+")
+class ChatFanoutBusTest {
+
+    private static final int FRAMES = 500;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private Node nodeA;
+
+    private Node nodeB;
+
+    /**
+     * 每次运行用随机的聊天室ID，避免同一个 Redis 上的其他节点或上一次运行干扰
+     */
+    private final long roomId = ThreadLocalRandom.current().nextLong(1_000_000_000L, 2_000_000_000L);
+
+    private final long otherRoomId = roomId + 1;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = node();
+        nodeB = node();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            resources.get(i).close();
+        }
+    }
+
+    @Test
+    void deliversToOtherNodeRoomSessionsInOrder() throws Exception {
+        List<Long> senderSide = new CopyOnWriteArrayList<>();
+        List<Long> inRoom = new CopyOnWriteArrayList<>();
+        List<Long> otherRoom = new CopyOnWriteArrayList<>();
+        nodeA.registry.register(1L, List.of(roomId), session(1L, senderSide));
+        nodeB.registry.register(2L, List.of(roomId), session(2L, inRoom));
+        nodeB.registry.register(3L, List.of(otherRoomId), session(3L, otherRoom));
+
+        // 订阅是异步建立的，先发探测帧直到两个节点都收到
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (inRoom.isEmpty() || senderSide.isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "订阅未在 10 秒内建立");
+            nodeA.bus.publish(roomId, frame(0L));
+            Thread.sleep(50);
+        }
+
+        List<Long> expected = new ArrayList<>(FRAMES);
+        for (long i = 1; i <= FRAMES; i++) {
+            nodeA.bus.publish(roomId, frame(i));
+            expected.add(i);
+        }
+
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (withoutProbes(inRoom).size() < FRAMES || withoutProbes(senderSide).size() < FRAMES) {
+            assertTrue(System.nanoTime() < deadline,
+                    "10 秒内未收齐: B=" + withoutProbes(inRoom).size() + ", A=" + withoutProbes(senderSide).size());
+            Thread.sleep(20);
+        }
+        // 多等一会儿，确认没有重复投递或投递到其他聊天室
+        Thread.sleep(500);
+
+        assertEquals(expected, withoutProbes(inRoom));
+        assertEquals(expected, withoutProbes(senderSide));
+        assertTrue(otherRoom.isEmpty(), "不在该聊天室的会话收到了 " + otherRoom.size() + " 帧");
+    }
+
+    private Node node() {
+        String host = System.getProperty("chat.redis.host");
+        int port = Integer.getInteger("chat.redis.port", 6379);
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        factory.afterPropertiesSet();
+        factory.start();
+        resources.add(factory::destroy);
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.afterPropertiesSet();
+        container.start();
+        resources.add(container::destroy);
+
+        ChatSessionRegistry registry = new ChatSessionRegistry(new SimpleMeterRegistry());
+        ChatFanoutBus bus = new ChatFanoutBus(new StringRedisTemplate(factory), container, registry, jsonMapper);
+        bus.subscribe();
+        resources.add(bus::shutdown);
+        return new Node(bus, registry);
+    }
+
+    private ChatFrame frame(long seq) {
+        ChatFrame frame = ChatFrame.of(ChatFrame.CHAT, roomId, 1L);
+        frame.setMessageId(seq);
+        frame.setContent("m" + seq);
+        return frame;
+    }
+
+    /**
+     * 记录收到的帧的 messageId
+     */
+    private WebSocketSession session(Long userId, List<Long> received) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ChatHandshakeInterceptor.USER_ID_ATTR, userId);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("u" + userId);
+        doAnswer(invocation -> {
+            TextMessage message = invocation.getArgument(0);
+            received.add(jsonMapper.readValue(message.getPayload(), ChatFrame.class).getMessageId());
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static List<Long> withoutProbes(List<Long> received) {
+        return received.stream().filter(seq -> seq != 0L).toList();
+    }
+
+    private record Node(ChatFanoutBus bus, ChatSessionRegistry registry) {
+    }
+}
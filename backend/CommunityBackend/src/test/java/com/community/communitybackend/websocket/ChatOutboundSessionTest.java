@@ -0,0 +1,162 @@
+package com.community.communitybackend.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 会话发送队列：第一帧卡在发送中（模拟慢客户端），后续帧在队列里按策略处理
+ */
+class ChatOutboundSessionTest {
+
+    private static final int CAPACITY = 3;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private final CountDownLatch firstSending = new CountDownLatch(1);
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private ChatOutboundQueues queues;
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        queues.shutdown();
+    }
+
+    @Test
+    void dropOldestKeepsNewestFrames() throws Exception {
+        WebSocketSession raw = slowSession();
+        ChatOutboundSession session = open("drop-oldest", raw);
+
+        session.enqueue(text("m0"), null);
+        assertTrue(firstSending.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            session.enqueue(text("m" + i), null);
+        }
+
+        assertEquals(CAPACITY, session.depth());
+        assertEquals(2, meterRegistry.counter("chat.ws.outbound.dropped").count());
+
+        unblock.countDown();
+        awaitSent(4);
+        assertEquals(List.of("m0", "m3", "m4", "m5"), sent);
+    }
+
+    @Test
+    void dropOldestSendsResyncForDroppedChatFrames() throws Exception {
+        WebSocketSession raw = slowSession();
+        ChatOutboundSession session = open("drop-oldest", raw);
+
+        session.enqueue(text("m0"), null, 7L);
+        assertTrue(firstSending.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            session.enqueue(text("m" + i), null, 7L);
+        }
+        assertEquals(CAPACITY, session.depth());
+
+        unblock.countDown();
+        awaitSent(5);
+        // 丢掉的 m1、m2 只换来一帧 RESYNC，排在剩下的消息前面
+        assertEquals(5, sent.size());
+        assertEquals("m0", sent.get(0));
+        ChatFrame resync = jsonMapper.readValue(sent.get(1), ChatFrame.class);
+        assertEquals(ChatFrame.RESYNC, resync.getType());
+        assertEquals(7L, resync.getRoomId());
+        assertEquals(List.of("m3", "m4", "m5"), sent.subList(2, 5));
+        assertEquals(1, meterRegistry.counter("chat.ws.outbound.resync").count());
+        assertEquals(0, meterRegistry.get("chat.ws.outbound.queued").gauge().value());
+    }
+
+    @Test
+    void coalesceReplacesFramesWithSameKey() throws Exception {
+        WebSocketSession raw = slowSession();
+        ChatOutboundSession session = open("coalesce", raw);
+
+        session.enqueue(text("m0"), null);
+        assertTrue(firstSending.await(5, TimeUnit.SECONDS));
+        session.enqueue(text("online"), "PRESENCE:1");
+        session.enqueue(text("m1"), null);
+        session.enqueue(text("offline"), "PRESENCE:1");
+
+        assertEquals(2, session.depth());
+        assertEquals(1, meterRegistry.counter("chat.ws.outbound.coalesced").count());
+
+        unblock.countDown();
+        awaitSent(3);
+        assertEquals(List.of("m0", "offline", "m1"), sent);
+    }
+
+    @Test
+    void disconnectClosesSessionWhenFull() throws Exception {
+        WebSocketSession raw = slowSession();
+        ChatOutboundSession session = open("disconnect", raw);
+
+        session.enqueue(text("m0"), null);
+        assertTrue(firstSending.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= CAPACITY + 1; i++) {
+            session.enqueue(text("m" + i), null);
+        }
+
+        assertEquals(0, session.depth());
+        assertEquals(0, meterRegistry.get("chat.ws.outbound.queued").gauge().value());
+        assertEquals(1, meterRegistry.counter("chat.ws.outbound.disconnected").count());
+        unblock.countDown();
+        verify(raw, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private ChatOutboundSession open(String policy, WebSocketSession raw) {
+        queues = new ChatOutboundQueues(CAPACITY, policy, 2, 10_000, meterRegistry, jsonMapper);
+        return queues.open(raw);
+    }
+
+    /**
+     * 第一帧一直阻塞到 unblock，之后的帧正常发送
+     */
+    private WebSocketSession slowSession() throws Exception {
+        WebSocketSession raw = mock(WebSocketSession.class);
+        when(raw.isOpen()).thenReturn(true);
+        when(raw.getId()).thenReturn("s1");
+        doAnswer(invocation -> {
+            firstSending.countDown();
+            unblock.await();
+            sent.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            return null;
+        }).when(raw).sendMessage(any());
+        return raw;
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static TextMessage text(String payload) {
+        return new TextMessage(payload);
+    }
+}
@@ -0,0 +1,134 @@
+package com.community.communitybackend.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 聊天 WebSocket 压测：单节点保持 1 万个并发会话，再发一条消息看能否推送到所有会话
+ *
+ * 需要先启动后端，并准备一个已登录用户的 Token 和他所在的聊天室；默认不运行，传入服务地址时才执行：
+ *   mvn test -DskipTests=false -Dtest=ChatWebSocketLoadTest \
+ *       -Dchat.load.url=ws://localhost:8080/ws/chat -Dchat.load.token=xxx -Dchat.load.roomId=1
+ * 可选：-Dchat.load.sessions=10000（会话数）-Dchat.load.holdSeconds=60（保持时长）
+ *
+ * 所有会话用同一个用户登录，服务端会把消息推给该用户的全部连接，正好覆盖一次 1 万连接的扇出。
+ * 压测机需要放开文件句柄数（ulimit -n 65535）。
+ */
+@EnabledIfSystemProperty(named = "chat.load.url", matches = ".+")
+class ChatWebSocketLoadTest {
+
+    /**
+     * 同时进行中的握手数，避免瞬间建连把服务端 accept 队列打满
+     */
+    private static final int MAX_PENDING_HANDSHAKES = 200;
+
+    @Test
+    void holdConcurrentSessionsAndFanOut() throws Exception {
+        String url = System.getProperty("chat.load.url");
+        String token = System.getProperty("chat.load.token");
+        long roomId = Long.getLong("chat.load.roomId", 1L);
+        int sessions = Integer.getInteger("chat.load.sessions", 10_000);
+        int holdSeconds = Integer.getInteger("chat.load.holdSeconds", 60);
+
+        URI uri = URI.create(url + "?token=" + token);
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+        AtomicInteger closed = new AtomicInteger();
+        CountDownLatch received = new CountDownLatch(sessions);
+        String marker = "load-test-" + System.nanoTime();
+
+        // 分批建连
+        Semaphore pending = new Semaphore(MAX_PENDING_HANDSHAKES);
+        List<CompletableFuture<WebSocket>> futures = new ArrayList<>(sessions);
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            pending.acquire();
+            CompletableFuture<WebSocket> future = client.newWebSocketBuilder()
+                    .buildAsync(uri, new Listener(marker, received, closed));
+            future.whenComplete((ws, e) -> pending.release());
+            futures.add(future);
+        }
+        List<WebSocket> sockets = new ArrayList<>(sessions);
+        int failed = 0;
+        for (CompletableFuture<WebSocket> future : futures) {
+            try {
+                sockets.add(future.get(60, TimeUnit.SECONDS));
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+        System.out.printf("建立 %d 个会话，失败 %d，耗时 %d ms%n", sockets.size(), failed, connectMillis);
+        assertEquals(0, failed, "有会话建立失败");
+
+        // 保持一段时间，期间不应有连接被服务端断开
+        Thread.sleep(TimeUnit.SECONDS.toMillis(holdSeconds));
+        assertEquals(0, closed.get(), "保持期间有会话被断开");
+
+        // 发一条消息，所有会话都应收到
+        long sendStart = System.nanoTime();
+        sockets.get(0).sendText("{\"type\":\"CHAT\",\"roomId\":" + roomId + ",\"content\":\"" + marker + "\"}", true);
+        boolean all = received.await(60, TimeUnit.SECONDS);
+        long fanOutMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendStart);
+        System.out.printf("推送到 %d/%d 个会话，耗时 %d ms%n", sessions - received.getCount(), sessions, fanOutMillis);
+        assertTrue(all, "部分会话没有收到消息");
+
+        for (WebSocket socket : sockets) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+    }
+
+    private static class Listener implements WebSocket.Listener {
+
+        private final String marker;
+        private final CountDownLatch received;
+        private final AtomicInteger closed;
+        private final StringBuilder buffer = new StringBuilder();
+
+        Listener(String marker, CountDownLatch received, AtomicInteger closed) {
+            this.marker = marker;
+            this.received = received;
+            this.closed = closed;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            buffer.append(data);
+            if (last) {
+                if (buffer.indexOf(marker) >= 0) {
+                    received.countDown();
+                }
+                buffer.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            closed.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            closed.incrementAndGet();
+        }
+    }
+}
@@ -15,9 +15,10 @@ export function getDirectMessages() {
 }
 
 /**
- * 获取聊天室消息
+ * 获取聊天室消息（消息ID游标分页）
  * @param {number} roomId - 聊天室ID
- * @param {Object} params - 分页参数
+ * @param {Object} params - { before, after, size }：before 向上翻历史，after 补拉新消息，
+ *                          都不传时返回最新一页；返回 { records, nextCursor, hasMore }
  */
 export function getChatMessages(roomId, params = {}) {
   return request.get(`/chat/room/${roomId}/messages`, { params })
@@ -31,3 +32,12 @@ export function getChatMessages(roomId, params = {}) {
 export function sendMessage(roomId, content) {
   return request.post(`/chat/room/${roomId}/send`, { content })
 }
+
+/**
+ * 批量查询在线状态（一次最多 200 个）
+ * @param {number[]} userIds - 用户ID列表
+ * @returns 其中在线的用户ID
+ */
+export function getOnlineUsers(userIds) {
+  return request.get('/chat/online', { params: { userIds: userIds.join(',') } })
+}